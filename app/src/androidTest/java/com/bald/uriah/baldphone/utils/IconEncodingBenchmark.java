@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bald.uriah.baldphone.utils;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.bald.uriah.baldphone.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Not a real assertion - logs the bytes per icon and the decode time per icon of the launcher icons
+ * of the device, stored the way they were before (intrinsic size, PNG) and the way they are now
+ * (at most app_icon_size, lossless WebP from API 30).
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class IconEncodingBenchmark {
+    private static final String TAG = IconEncodingBenchmark.class.getSimpleName();
+    private static final int DECODE_ROUNDS = 5;
+
+    @Test
+    public void benchmark() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final PackageManager packageManager = context.getPackageManager();
+        final List<ResolveInfo> resolveInfos =
+                packageManager.queryIntentActivities(new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER), 0);
+        assertFalse(resolveInfos.isEmpty());
+        final int iconSize = context.getResources().getDimensionPixelSize(R.dimen.app_icon_size);
+
+        final List<byte[]> before = new ArrayList<>(resolveInfos.size());
+        final List<byte[]> after = new ArrayList<>(resolveInfos.size());
+        for (ResolveInfo resolveInfo : resolveInfos) {
+            final Drawable drawable = resolveInfo.activityInfo.loadIcon(packageManager);
+            before.add(S.bitmapToByteArray(drawable instanceof BitmapDrawable ?
+                    ((BitmapDrawable) drawable).getBitmap() : S.getBitmapFromDrawable(drawable)));
+            after.add(S.bitmapToByteArray(S.getBitmapFromDrawable(drawable, iconSize),
+                    Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ?
+                            Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.PNG));
+        }
+
+        log("before", before);
+        log("after", after);
+    }
+
+    private static void log(String name, List<byte[]> icons) {
+        long bytes = 0;
+        for (byte[] icon : icons)
+            bytes += icon.length;
+        long nanos = 0;
+        for (int round = 0; round < DECODE_ROUNDS; round++) {
+            final long start = SystemClock.elapsedRealtimeNanos();
+            for (byte[] icon : icons)
+                BitmapFactory.decodeByteArray(icon, 0, icon.length);
+            nanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        Log.i(TAG, String.format(Locale.US, "%s: %d icons, %d bytes per icon, %.3f ms decode per icon",
+                name, icons.size(), bytes / icons.size(), nanos / 1e6 / DECODE_ROUNDS / icons.size()));
+    }
+}
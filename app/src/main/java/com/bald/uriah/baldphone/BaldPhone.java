@@ -23,6 +23,7 @@ import android.util.Log;
 
 import com.bald.uriah.baldphone.activities.UpdatesActivity;
 import com.bald.uriah.baldphone.databases.alarms.AlarmScheduler;
+import com.bald.uriah.baldphone.databases.apps.AppUsageTracker;
 import com.bald.uriah.baldphone.databases.reminders.ReminderScheduler;
 import com.bald.uriah.baldphone.services.NotificationListenerService;
 import com.bald.uriah.baldphone.utils.BaldUncaughtExceptionHandler;
@@ -41,6 +42,7 @@ public class BaldPhone extends Application {
         JodaTimeAndroid.init(this);
         AlarmScheduler.reStartAlarms(this);
         ReminderScheduler.reStartReminders(this);
+        AppUsageTracker.loadInBackground(this);
         if (BuildConfig.FLAVOR.equals("baldUpdates")) {
             UpdatesActivity.removeUpdatesInfo(this);
         }
@@ -16,30 +16,43 @@
 
 package com.bald.uriah.baldphone.activities;
 
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Point;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.PopupWindow;
 
 import androidx.annotation.NonNull;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.adapters.AppsRecyclerViewAdapter;
 import com.bald.uriah.baldphone.databases.apps.App;
+import com.bald.uriah.baldphone.databases.apps.AppUsageTracker;
 import com.bald.uriah.baldphone.databases.apps.AppsDatabase;
 import com.bald.uriah.baldphone.databases.apps.AppsDatabaseHelper;
+import com.bald.uriah.baldphone.databases.apps.AppsIndexer;
+import com.bald.uriah.baldphone.databases.home_screen_pins.HomeScreenPinHelper;
 import com.bald.uriah.baldphone.utils.BDB;
 import com.bald.uriah.baldphone.utils.BDialog;
 import com.bald.uriah.baldphone.utils.DropDownRecyclerViewAdapter;
 import com.bald.uriah.baldphone.utils.S;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static com.bald.uriah.baldphone.adapters.AppsRecyclerViewAdapter.TYPE_HEADER;
@@ -59,25 +72,41 @@ public class AppsActivity extends com.bald.uriah.baldphone.activities.BaldActivi
 
     private AppsRecyclerViewAdapter appsRecyclerViewAdapter;
     private String chooseKey;
+    /**
+     * the reload which is running, batches of a reconcile arrive in bursts so at most one more is started after it
+     */
+    private ReloadApps reloadApps;
+    private boolean reloadPending;
+    private final BroadcastReceiver appsUpdatedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            reloadPending = true;
+            if (reloadApps == null)
+                reloadApps();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_apps);
 
-        AppsDatabaseHelper.updateDB(this);
-
-        appsDatabase = AppsDatabase.getInstance(AppsActivity.this);
-        final List<App> appList = appsDatabase.appsDatabaseDao().getAllOrderedByABC();
-        recyclerView = findViewById(R.id.rc_apps);
-        chooseKey = getIntent().getStringExtra(CHOOSE_MODE);
-        appsRecyclerViewAdapter = new AppsRecyclerViewAdapter(appList, this, chooseKey != null ? this::appChosen : this::showDropDown, recyclerView);
+        // the list is shown from the last snapshot of the database, and updated when the reconcile changes it
+        LocalBroadcastManager.getInstance(this)
+                .registerReceiver(appsUpdatedReceiver, new IntentFilter(AppsDatabaseHelper.ACTION_APPS_UPDATED));
+        AppsIndexer.syncInBackground(this);
 
         final WindowManager windowManager = getWindowManager();
         final Point point = new Point();
         windowManager.getDefaultDisplay().getSize(point);
         final boolean screenOrientation = (point.x / point.y) != 0;
         numberOfAppsInARow = screenOrientation ? 6 : 3;
+
+        appsDatabase = AppsDatabase.getInstance(AppsActivity.this);
+        final List<App> appList = loadApps();
+        recyclerView = findViewById(R.id.rc_apps);
+        chooseKey = getIntent().getStringExtra(CHOOSE_MODE);
+        appsRecyclerViewAdapter = new AppsRecyclerViewAdapter(appList, getMostUsed(appList), this, chooseKey != null ? this::appChosen : this::showDropDown, recyclerView);
         final GridLayoutManager gridLayoutManager = new GridLayoutManager(this, numberOfAppsInARow);
         gridLayoutManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
             @Override
@@ -96,6 +125,54 @@ public class AppsActivity extends com.bald.uriah.baldphone.activities.BaldActivi
         recyclerView.setAdapter(appsRecyclerViewAdapter);
     }
 
+    private void reloadApps() {
+        reloadPending = false;
+        reloadApps = new ReloadApps(this, new ArrayList<>(appsRecyclerViewAdapter.dataList));
+        reloadApps.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void onAppsReloaded(AppsRecyclerViewAdapter.AppsUpdate appsUpdate) {
+        reloadApps = null;
+        if (!appsRecyclerViewAdapter.applyApps(appsUpdate))
+            reloadPending = true;
+        if (reloadPending)
+            reloadApps();
+    }
+
+    private List<App> loadApps() {
+        final List<App> appList = appsDatabase.appsDatabaseDao().getAllOrderedByABC();
+        HomeScreenPinHelper.markPinnedApps(this, appList);
+        return appList;
+    }
+
+    /**
+     * @return a row of the most used apps of appList, served from memory by {@link AppUsageTracker}
+     */
+    private List<App> getMostUsed(List<App> appList) {
+        final List<String> mostUsedComponentNames = AppUsageTracker.getMostUsed(this, numberOfAppsInARow);
+        if (mostUsedComponentNames.isEmpty())
+            return Collections.emptyList();
+        final Map<String, App> appsByComponentName = new HashMap<>(appList.size() * 2);
+        for (App app : appList)
+            appsByComponentName.put(app.getFlattenComponentName(), app);
+        final List<App> mostUsed = new ArrayList<>(mostUsedComponentNames.size());
+        for (String flattenComponentName : mostUsedComponentNames) {
+            final App app = appsByComponentName.get(flattenComponentName);
+            // launches of apps which are not listed, like uninstalled ones, are not shown
+            if (app != null)
+                mostUsed.add(app);
+        }
+        return mostUsed;
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (reloadApps != null)
+            reloadApps.cancel(false);
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(appsUpdatedReceiver);
+        super.onDestroy();
+    }
+
     @Override
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -114,6 +191,9 @@ public class AppsActivity extends com.bald.uriah.baldphone.activities.BaldActivi
         }
     }
 
+    /**
+     * The uninstalled app is removed from the list by {@link AppsIndexer}, through {@link AppsDatabaseHelper#ACTION_APPS_UPDATED}
+     */
     private void uninstallApp(App app) {
         final String app_pkg_name = ComponentName.unflattenFromString(app.getFlattenComponentName()).getPackageName();
         startActivityForResult(new Intent(Intent.ACTION_UNINSTALL_PACKAGE)
@@ -121,16 +201,6 @@ public class AppsActivity extends com.bald.uriah.baldphone.activities.BaldActivi
                 .putExtra(Intent.EXTRA_RETURN_RESULT, true), UNINSTALL_REQUEST_CODE);
     }
 
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == UNINSTALL_REQUEST_CODE) {
-            if (resultCode == RESULT_OK) {
-                recreate();
-            }
-        }
-    }
-
     private void showDropDown(final int index) {
         appsRecyclerViewAdapter.index = index;
         final App app = (App) appsRecyclerViewAdapter.dataList.get(index);
@@ -155,15 +225,11 @@ public class AppsActivity extends com.bald.uriah.baldphone.activities.BaldActivi
                         viewHolder.pic.setImageResource(app.isPinned() ? R.drawable.remove_on_button : R.drawable.add_on_button);
                         viewHolder.text.setText(app.isPinned() ? R.string.remove_shortcut : R.string.add_shortcut);
                         viewHolder.itemView.setOnClickListener(v1 -> {
-                            if (app.isPinned()) {
-                                appsDatabase.appsDatabaseDao().update(app.getId(), false);
-                                app.setPinned(false);
-                                appsRecyclerViewAdapter.notifyItemChanged(appsRecyclerViewAdapter.index);
-                            } else {
-                                appsDatabase.appsDatabaseDao().update(app.getId(), true);
-                                app.setPinned(true);
-                                appsRecyclerViewAdapter.notifyItemChanged(appsRecyclerViewAdapter.index);
-                            }
+                            if (app.isPinned())
+                                HomeScreenPinHelper.removeApp(AppsActivity.this, app);
+                            else
+                                HomeScreenPinHelper.pinApp(AppsActivity.this, app);
+                            appsRecyclerViewAdapter.notifyAppChanged(app);
                             popupWindow.dismiss();
                             showDropDown(index);
                         });
@@ -223,4 +289,33 @@ public class AppsActivity extends com.bald.uriah.baldphone.activities.BaldActivi
     protected int requiredPermissions() {
         return PERMISSION_NONE;
     }
-}
\ No newline at end of file
+
+    /**
+     * Loads the apps and diffs them with the shown ones off the main thread
+     */
+    private static class ReloadApps extends AsyncTask<Void, Void, AppsRecyclerViewAdapter.AppsUpdate> {
+        private final WeakReference<AppsActivity> appsActivityWeakReference;
+        private final List<AppsRecyclerViewAdapter.InAppsRecyclerView> oldDataList;
+
+        ReloadApps(AppsActivity appsActivity, List<AppsRecyclerViewAdapter.InAppsRecyclerView> oldDataList) {
+            appsActivityWeakReference = new WeakReference<>(appsActivity);
+            this.oldDataList = oldDataList;
+        }
+
+        @Override
+        protected AppsRecyclerViewAdapter.AppsUpdate doInBackground(Void... voids) {
+            final AppsActivity appsActivity = appsActivityWeakReference.get();
+            if (appsActivity == null)
+                return null;
+            final List<App> appList = appsActivity.loadApps();
+            return appsActivity.appsRecyclerViewAdapter.prepareApps(oldDataList, appList, appsActivity.getMostUsed(appList));
+        }
+
+        @Override
+        protected void onPostExecute(AppsRecyclerViewAdapter.AppsUpdate appsUpdate) {
+            final AppsActivity appsActivity = appsActivityWeakReference.get();
+            if (appsActivity != null && appsUpdate != null && !isCancelled())
+                appsActivity.onAppsReloaded(appsUpdate);
+        }
+    }
+}
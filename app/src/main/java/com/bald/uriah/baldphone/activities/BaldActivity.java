@@ -41,6 +41,7 @@ import androidx.core.app.ActivityCompat;
 
 import com.bald.uriah.baldphone.BuildConfig;
 import com.bald.uriah.baldphone.R;
+import com.bald.uriah.baldphone.databases.apps.AppUsageTracker;
 import com.bald.uriah.baldphone.utils.BDB;
 import com.bald.uriah.baldphone.utils.BDialog;
 import com.bald.uriah.baldphone.utils.BPrefs;
@@ -272,6 +273,7 @@ public abstract class BaldActivity extends AppCompatActivity implements SensorEv
 
         if (useAccidentalGuard)
             sensorManager.unregisterListener(this);
+        AppUsageTracker.flush(this);
         super.onPause();
     }
 
@@ -32,9 +32,10 @@ import android.graphics.drawable.AnimatedVectorDrawable;
 import android.graphics.drawable.Drawable;
 import android.media.AudioManager;
 import android.os.AsyncTask;
-import android.os.BatteryManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.provider.Telephony;
 import android.speech.RecognizerIntent;
 import android.util.Log;
 import android.util.TypedValue;
@@ -56,7 +57,7 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import com.bald.uriah.baldphone.BuildConfig;
 import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.adapters.BaldPagerAdapter;
-import com.bald.uriah.baldphone.databases.apps.AppsDatabaseHelper;
+import com.bald.uriah.baldphone.databases.apps.AppsIndexer;
 import com.bald.uriah.baldphone.services.NotificationListenerService;
 import com.bald.uriah.baldphone.utils.BDB;
 import com.bald.uriah.baldphone.utils.BDialog;
@@ -64,6 +65,7 @@ import com.bald.uriah.baldphone.utils.BPrefs;
 import com.bald.uriah.baldphone.utils.BaldHomeWatcher;
 import com.bald.uriah.baldphone.utils.BaldPrefsUtils;
 import com.bald.uriah.baldphone.utils.BaldToast;
+import com.bald.uriah.baldphone.utils.BatteryState;
 import com.bald.uriah.baldphone.utils.D;
 import com.bald.uriah.baldphone.utils.DropDownRecyclerViewAdapter;
 import com.bald.uriah.baldphone.utils.PageTransformers;
@@ -74,6 +76,7 @@ import com.bald.uriah.baldphone.views.BatteryView;
 import com.bald.uriah.baldphone.views.ViewPagerHolder;
 import com.bald.uriah.baldphone.views.home.HomePage1;
 import com.bald.uriah.baldphone.views.home.NotesView;
+import com.bald.uriah.baldphone.views.home.PreInflatedViews;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -115,6 +118,21 @@ public class HomeScreenActivity extends BaldActivity {
     private ViewPagerHolder viewPagerHolder;
     private BatteryView batteryView;
     private boolean lowBatteryAlert;
+    /**
+     * the state {@link #batteryView} and the status bar show, null until the first broadcast
+     */
+    private BatteryState batteryState;
+    private PreInflatedViews preInflatedViews;
+    /**
+     * Invalidates the cached default sms app, delivered only if BaldPhone is the old or new default.
+     * see {@link S#invalidateDefaultSmsPackage()}
+     */
+    private final BroadcastReceiver defaultSmsPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            S.invalidateDefaultSmsPackage();
+        }
+    };
     /**
      * Listens to changes in battery {@value Intent#ACTION_BATTERY_CHANGED}
      */
@@ -122,14 +140,15 @@ public class HomeScreenActivity extends BaldActivity {
         @Override
         public void onReceive(Context context, Intent intent) {
             if (batteryView != null) {
-                final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-                final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-                final int batteryPct = Math.round(level / (float) scale * 100);
-                final int chargePlug = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
-                final boolean charged = chargePlug == BatteryManager.BATTERY_PLUGGED_AC || chargePlug == BatteryManager.BATTERY_PLUGGED_WIRELESS || chargePlug == BatteryManager.BATTERY_PLUGGED_USB;
-                batteryView.setLevel(batteryPct, charged);
-                if (lowBatteryAlert)
-                    getWindow().setStatusBarColor((batteryPct < D.LOW_BATTERY_LEVEL && !charged) ? ContextCompat.getColor(context, R.color.battery_low) : D.DEFAULT_STATUS_BAR_COLOR);
+                final BatteryState newBatteryState = BatteryState.from(intent);
+                if (newBatteryState.equals(batteryState))
+                    return;
+                // the last known level stays shown
+                if (newBatteryState.isLevelKnown())
+                    batteryView.setLevel(newBatteryState.level, newBatteryState.charging);
+                if (lowBatteryAlert && (batteryState == null || batteryState.isLow() != newBatteryState.isLow()))
+                    getWindow().setStatusBarColor(newBatteryState.isLow() ? ContextCompat.getColor(context, R.color.battery_low) : D.DEFAULT_STATUS_BAR_COLOR);
+                batteryState = newBatteryState;
             }
         }
     };
@@ -195,6 +214,12 @@ public class HomeScreenActivity extends BaldActivity {
             finish();
             return;
         }
+        // the starting page and its neighbours are inflated in the background while the rest is initialized
+        preInflatedViews = new PreInflatedViews(this);
+        preInflatedViews.inflate(R.layout.fragment_home_page1, R.layout.fragment_home_page2);
+        if (sharedPreferences.getBoolean(BPrefs.NOTE_VISIBLE_KEY, BPrefs.NOTE_VISIBLE_DEFAULT_VALUE))
+            preInflatedViews.inflate(R.layout.notes_fragment);
+        preInflatedViews.inflate(R.layout.home_factory);
         try {
             startService(new Intent(this, NotificationListenerService.class));
         } catch (Exception e) {
@@ -274,6 +299,10 @@ public class HomeScreenActivity extends BaldActivity {
     @Override
     protected void onStart() {
         super.onStart();
+        // the user may have changed the default sms app while away
+        S.invalidateDefaultSmsPackage();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            registerReceiver(defaultSmsPackageReceiver, new IntentFilter(Telephony.Sms.Intents.ACTION_DEFAULT_SMS_PACKAGE_CHANGED));
         onStartCounter++;
         if (finishedUpdatingApps)
             updateViewPager();
@@ -310,9 +339,12 @@ public class HomeScreenActivity extends BaldActivity {
     @SuppressLint("InlinedApi")
     protected void onResume() { // remember to change in Page1EditorActivity.java too!
         super.onResume();
-        if (baldPrefsUtils.hasChanged(this)) {
+        if (baldPrefsUtils.hasChangedExceptCustomButtons(this)) {
             viewPagerHolder.getViewPager().removeAllViews();//android auto saves fragments, not good for us in this case
             this.recreate();
+        } else if (baldPrefsUtils.haveCustomButtonsChanged()) {
+            baldPrefsUtils = BaldPrefsUtils.newInstance(this);
+            baldPagerAdapter.recreateHomePage1();
         }
 
         soundButton.setImageResource(SOUND_DRAWABLES[audioManager.getRingerMode()]);
@@ -374,12 +406,19 @@ public class HomeScreenActivity extends BaldActivity {
     @Override
     protected void onStop() {
         baldHomeWatcher.stopWatch();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            try {
+                unregisterReceiver(defaultSmsPackageReceiver);
+            } catch (IllegalArgumentException ignore) {
+            }
         super.onStop();
     }
 
     @Override
     protected void onDestroy() {
         recognizerManager.setHomeScreen(null);
+        if (preInflatedViews != null)
+            preInflatedViews.clear();
         super.onDestroy();
     }
 
@@ -387,7 +426,7 @@ public class HomeScreenActivity extends BaldActivity {
      * Starts the view pager - being called only in {@link #onCreate(Bundle)}
      */
     private void viewPagerHandler() {
-        baldPagerAdapter = new BaldPagerAdapter(this);
+        baldPagerAdapter = new BaldPagerAdapter(this, preInflatedViews);
         viewPagerHolder.setPageTransformer(false, PageTransformers.pageTransformers[sharedPreferences.getInt(BPrefs.PAGE_TRANSFORMERS_KEY, BPrefs.PAGE_TRANSFORMERS_DEFAULT_VALUE)]);
         viewPagerHolder.setViewPagerAdapter(baldPagerAdapter);
         viewPagerHolder.setCurrentItem(baldPagerAdapter.startingPage);
@@ -398,7 +437,7 @@ public class HomeScreenActivity extends BaldActivity {
      * Sets the page to {@link BaldPagerAdapter#startingPage}
      */
     private void updateViewPager() {
-        baldPagerAdapter.obtainAppList();
+        baldPagerAdapter.obtainAppList(viewPagerHolder::onDataChanged);
         viewPagerHolder.setCurrentItem(baldPagerAdapter.startingPage);
         viewPagerHolder.onDataChanged();
     }
@@ -467,7 +506,7 @@ public class HomeScreenActivity extends BaldActivity {
         @Override
         protected Void doInBackground(Context... contexts) {
             try {
-                AppsDatabaseHelper.updateDB(contexts[0]);
+                AppsIndexer.sync(contexts[0]);
             } catch (Exception e) {
                 BaldToast.from(contexts[0].getApplicationContext()).setType(BaldToast.TYPE_ERROR).setLength(Toast.LENGTH_LONG).setText(e.getMessage());
             }
@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
+import android.os.Parcelable;
 import android.provider.Settings;
 import android.util.Log;
 
@@ -35,15 +36,25 @@ import com.bald.uriah.baldphone.services.NotificationListenerService;
 import com.bald.uriah.baldphone.utils.BDB;
 import com.bald.uriah.baldphone.utils.BDialog;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static com.bald.uriah.baldphone.services.NotificationListenerService.ACTION_REGISTER_ACTIVITY;
 import static com.bald.uriah.baldphone.services.NotificationListenerService.ACTIVITY_NONE;
 import static com.bald.uriah.baldphone.services.NotificationListenerService.KEY_EXTRA_ACTIVITY;
+import static com.bald.uriah.baldphone.services.NotificationListenerService.KEY_EXTRA_KEY;
 import static com.bald.uriah.baldphone.services.NotificationListenerService.KEY_EXTRA_NOTIFICATIONS;
+import static com.bald.uriah.baldphone.services.NotificationListenerService.KEY_EXTRA_ORDER;
+import static com.bald.uriah.baldphone.services.NotificationListenerService.KEY_EXTRA_POSTED_NOTIFICATIONS;
+import static com.bald.uriah.baldphone.services.NotificationListenerService.KEY_EXTRA_REMOVED_KEYS;
 import static com.bald.uriah.baldphone.services.NotificationListenerService.NOTIFICATIONS_ACTIVITY;
 
 public class NotificationsActivity extends BaldActivity {
     private static final String TAG = NotificationsActivity.class.getSimpleName();
-    public Bundle[] activeNotifications;
+    /**
+     * the active notifications by their key in the order they are shown, kept up to date by the changes the service sends
+     */
+    private final Map<String, Bundle> activeNotifications = new LinkedHashMap<>();
     public RecyclerView recyclerView;
     private NotificationRecyclerViewAdapter notificationRecyclerViewAdapter;
     private final BroadcastReceiver notificationReceiver = new BroadcastReceiver() {
@@ -51,14 +62,37 @@ public class NotificationsActivity extends BaldActivity {
         public void onReceive(Context context, Intent intent) {
             if (!intent.getAction().equals(NotificationListenerService.NOTIFICATIONS_ACTIVITY_BROADCAST))
                 throw new AssertionError("!intent.getAction().equals(NotificationListenerService.NOTIFICATIONS_ACTIVITY_BROADCAST)");
-            activeNotifications =
-                    (Bundle[]) intent.getParcelableArrayExtra(KEY_EXTRA_NOTIFICATIONS);
+            if (intent.hasExtra(KEY_EXTRA_NOTIFICATIONS)) {
+                activeNotifications.clear();
+                for (final Parcelable parcelable : intent.getParcelableArrayExtra(KEY_EXTRA_NOTIFICATIONS)) {
+                    final Bundle bundle = (Bundle) parcelable;
+                    activeNotifications.put(bundle.getString(KEY_EXTRA_KEY), bundle);
+                }
+            } else {
+                for (final Parcelable parcelable : intent.getParcelableArrayExtra(KEY_EXTRA_POSTED_NOTIFICATIONS)) {
+                    final Bundle bundle = (Bundle) parcelable;
+                    activeNotifications.put(bundle.getString(KEY_EXTRA_KEY), bundle);
+                }
+                for (final String key : intent.getStringArrayExtra(KEY_EXTRA_REMOVED_KEYS))
+                    activeNotifications.remove(key);
+                // posted notifications were added at the end
+                final Map<String, Bundle> ordered = new LinkedHashMap<>(activeNotifications.size() * 2);
+                for (final String key : intent.getStringArrayExtra(KEY_EXTRA_ORDER)) {
+                    final Bundle bundle = activeNotifications.get(key);
+                    if (bundle != null)
+                        ordered.put(key, bundle);
+                }
+                activeNotifications.clear();
+                activeNotifications.putAll(ordered);
+            }
+
+            final Bundle[] bundles = activeNotifications.values().toArray(new Bundle[0]);
             if (notificationRecyclerViewAdapter == null) {
                 notificationRecyclerViewAdapter =
-                        new NotificationRecyclerViewAdapter(NotificationsActivity.this, activeNotifications);
+                        new NotificationRecyclerViewAdapter(NotificationsActivity.this, bundles);
                 recyclerView.setAdapter(notificationRecyclerViewAdapter);
             } else {
-                notificationRecyclerViewAdapter.changeNotifications(activeNotifications);
+                notificationRecyclerViewAdapter.changeNotifications(bundles);
             }
         }
     };
@@ -26,7 +26,9 @@ import androidx.annotation.Nullable;
 
 import com.bald.uriah.baldphone.BuildConfig;
 import com.bald.uriah.baldphone.R;
+import com.bald.uriah.baldphone.databases.apps.AppIconStore;
 import com.bald.uriah.baldphone.databases.apps.AppsDatabase;
+import com.bald.uriah.baldphone.databases.apps.AppsIndexer;
 import com.bald.uriah.baldphone.utils.BDB;
 import com.bald.uriah.baldphone.utils.BDialog;
 import com.bald.uriah.baldphone.utils.BPrefs;
@@ -43,6 +45,8 @@ public class TechnicalInfoActivity extends BaldActivity {
             e.printStackTrace();
         }
         AppsDatabase.getInstance(context).appsDatabaseDao().deleteAll();
+        AppIconStore.clear(context);
+        AppsIndexer.invalidate(context);
     }
 
     public static boolean deleteDir(File dir) {
@@ -29,6 +29,7 @@ import android.widget.TextView;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -43,6 +44,7 @@ import com.bald.uriah.baldphone.views.ModularRecyclerView;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class AppsRecyclerViewAdapter extends ModularRecyclerView.ModularAdapter<RecyclerView.ViewHolder> {
     public static final int TYPE_HEADER = 0;
@@ -61,7 +63,10 @@ public class AppsRecyclerViewAdapter extends ModularRecyclerView.ModularAdapter<
     public AppViewHolder lastView;
     private boolean appsOneGrid;
 
-    public AppsRecyclerViewAdapter(List<App> appList, BaldActivity activity, AppsActivity.ChangeAppListener changeAppListener, RecyclerView caller) {
+    /**
+     * @param mostUsed shown before all the apps, under their own header
+     */
+    public AppsRecyclerViewAdapter(List<App> appList, List<App> mostUsed, BaldActivity activity, AppsActivity.ChangeAppListener changeAppListener, RecyclerView caller) {
         this.caller = caller;
         this.activity = activity;
         this.layoutInflater = LayoutInflater.from(activity);
@@ -75,17 +80,7 @@ public class AppsRecyclerViewAdapter extends ModularRecyclerView.ModularAdapter<
         this.appsOneGrid = BPrefs.get(activity).getBoolean(BPrefs.APPS_ONE_GRID_KEY, BPrefs.APPS_ONE_GRID_DEFAULT_VALUE);
         letterToPosition = new SparseIntArray();
         dataList = new ArrayList<>((int) (appList.size() * 1.5));
-        String lastChar = "";
-        String disChar;
-        for (int i = 0; i < appList.size(); i++) {
-            disChar = appList.get(i).getLabel().substring(0, 1).toUpperCase();
-            if (!appsOneGrid && !disChar.equals(lastChar)) {
-                dataList.add(new AppStickyHeader(disChar));
-                letterToPosition.append(disChar.charAt(0), dataList.size() - 1);
-            }
-            dataList.add(appList.get(i));
-            lastChar = disChar;
-        }
+        buildDataList(appList, mostUsed, dataList, letterToPosition);
 
         final TypedValue typedValue = new TypedValue();
         Resources.Theme theme = activity.getTheme();
@@ -95,6 +90,78 @@ public class AppsRecyclerViewAdapter extends ModularRecyclerView.ModularAdapter<
         textColorOnBackground = typedValue.data;
     }
 
+    private void buildDataList(List<App> appList, List<App> mostUsed, List<InAppsRecyclerView> dataList, SparseIntArray letterToPosition) {
+        if (!appsOneGrid && !mostUsed.isEmpty()) {
+            dataList.add(new AppStickyHeader(activity.getString(R.string.most_used)));
+            dataList.addAll(mostUsed);
+        }
+        String lastSection = null;
+        String section;
+        for (int i = 0; i < appList.size(); i++) {
+            section = getSection(appList.get(i));
+            if (!appsOneGrid && !section.equals(lastSection)) {
+                dataList.add(new AppStickyHeader(section));
+                // sections are in the order of the locale, but the letter chooser shows them by their first char
+                if (letterToPosition.indexOfKey(section.charAt(0)) < 0)
+                    letterToPosition.put(section.charAt(0), dataList.size() - 1);
+            }
+            dataList.add(appList.get(i));
+            lastSection = section;
+        }
+    }
+
+    /**
+     * @return the section of the app, or the first letter of its label if it was not indexed for a locale yet
+     */
+    private static String getSection(App app) {
+        if (app.getSection() != null && !app.getSection().isEmpty())
+            return app.getSection();
+        final String label = app.getLabel();
+        return label == null || label.isEmpty() ? "#" : label.substring(0, 1).toUpperCase();
+    }
+
+    /**
+     * Builds the list of the new apps and diffs it, may be called on a background thread.
+     *
+     * @param oldDataList a copy of {@link #dataList}, taken on the main thread
+     */
+    public AppsUpdate prepareApps(List<InAppsRecyclerView> oldDataList, List<App> appList, List<App> mostUsed) {
+        final List<InAppsRecyclerView> newDataList = new ArrayList<>((int) (appList.size() * 1.5));
+        final SparseIntArray newLetterToPosition = new SparseIntArray();
+        buildDataList(appList, mostUsed, newDataList, newLetterToPosition);
+        return new AppsUpdate(oldDataList, newDataList, newLetterToPosition,
+                DiffUtil.calculateDiff(new DataListDiffCallback(oldDataList, newDataList)));
+    }
+
+    /**
+     * Replaces the apps, notifying only about the items which were inserted, removed or changed.
+     * The selected app stays selected if it is still there.
+     *
+     * @return false if the apps changed since the update was prepared, it was not applied then
+     */
+    public boolean applyApps(AppsUpdate appsUpdate) {
+        if (!appsUpdate.oldDataList.equals(dataList))
+            return false;
+        final InAppsRecyclerView selected = index >= 0 && index < dataList.size() ? dataList.get(index) : null;
+        dataList.clear();
+        dataList.addAll(appsUpdate.newDataList);
+        letterToPosition.clear();
+        for (int i = 0; i < appsUpdate.letterToPosition.size(); i++)
+            letterToPosition.append(appsUpdate.letterToPosition.keyAt(i), appsUpdate.letterToPosition.valueAt(i));
+        index = selected == null ? -1 : dataList.indexOf(selected);
+        appsUpdate.diffResult.dispatchUpdatesTo(this);
+        return true;
+    }
+
+    /**
+     * an app may be listed twice, under the most used and under its section
+     */
+    public void notifyAppChanged(App app) {
+        for (int i = 0; i < dataList.size(); i++)
+            if (app.equals(dataList.get(i)))
+                notifyItemChanged(i);
+    }
+
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -138,6 +205,59 @@ public class AppsRecyclerViewAdapter extends ModularRecyclerView.ModularAdapter<
         }
     }
 
+    public static class AppsUpdate {
+        private final List<InAppsRecyclerView> oldDataList, newDataList;
+        private final SparseIntArray letterToPosition;
+        private final DiffUtil.DiffResult diffResult;
+
+        private AppsUpdate(List<InAppsRecyclerView> oldDataList, List<InAppsRecyclerView> newDataList, SparseIntArray letterToPosition, DiffUtil.DiffResult diffResult) {
+            this.oldDataList = oldDataList;
+            this.newDataList = newDataList;
+            this.letterToPosition = letterToPosition;
+            this.diffResult = diffResult;
+        }
+    }
+
+    private static class DataListDiffCallback extends DiffUtil.Callback {
+        private final List<InAppsRecyclerView> oldList, newList;
+
+        DataListDiffCallback(List<InAppsRecyclerView> oldList, List<InAppsRecyclerView> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            final InAppsRecyclerView oldItem = oldList.get(oldItemPosition), newItem = newList.get(newItemPosition);
+            if (oldItem.type() != newItem.type())
+                return false;
+            if (oldItem.type() == TYPE_HEADER)
+                return ((AppStickyHeader) oldItem).name.equals(((AppStickyHeader) newItem).name);
+            return ((App) oldItem).getId() == ((App) newItem).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            final InAppsRecyclerView oldItem = oldList.get(oldItemPosition), newItem = newList.get(newItemPosition);
+            if (oldItem.type() == TYPE_HEADER)
+                return true;
+            final App oldApp = (App) oldItem, newApp = (App) newItem;
+            return oldApp.isPinned() == newApp.isPinned()
+                    && Objects.equals(oldApp.getLabel(), newApp.getLabel())
+                    && Objects.equals(oldApp.getIconKey(), newApp.getIconKey());
+        }
+    }
+
     public class HeaderViewHolder extends RecyclerView.ViewHolder {
         final TextView tv_letter;
 
@@ -16,22 +16,37 @@
 
 package com.bald.uriah.baldphone.adapters;
 
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.SparseArray;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.util.Pools;
 
+import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.activities.HomeScreenActivity;
+import com.bald.uriah.baldphone.databases.apps.App;
+import com.bald.uriah.baldphone.databases.apps.AppUsageTracker;
+import com.bald.uriah.baldphone.databases.apps.AppsDatabase;
 import com.bald.uriah.baldphone.databases.home_screen_pins.HomeScreenPinHelper;
 import com.bald.uriah.baldphone.utils.BPrefs;
 import com.bald.uriah.baldphone.views.home.HomePage1;
 import com.bald.uriah.baldphone.views.home.HomePage2;
 import com.bald.uriah.baldphone.views.home.HomeViewFactory;
 import com.bald.uriah.baldphone.views.home.NotesView;
+import com.bald.uriah.baldphone.views.home.PreInflatedViews;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This is the pager adapter used in the {@link HomeScreenActivity}
@@ -39,7 +54,7 @@ import java.util.List;
  * {@link HomePage1}
  * {@link HomePage2}
  * {@link NotesView}
- * {@link HomeViewFactory} (For accessing Apps)
+ * {@link HomeViewFactory} (For accessing Apps) - the most used apps which are not pinned, if there are any, and then the pinned items
  * Notice - it uses Views and not Fragments
  */
 public class BaldPagerAdapter extends BaldViewAdapter {
@@ -52,44 +67,144 @@ public class BaldPagerAdapter extends BaldViewAdapter {
     public int startingPage;
     @SuppressWarnings("unchecked")
     public List<HomeScreenPinHelper.HomeScreenPinnable> pinnedList = Collections.EMPTY_LIST;
+    /**
+     * the most used apps which are not pinned, shown on a page of their own before the pinned items
+     */
+    @SuppressWarnings("unchecked")
+    public List<App> mostUsedList = Collections.EMPTY_LIST;
     private int numItemsBefore, numItems;
     private HomeScreenActivity homeScreen;
 
-    public BaldPagerAdapter(HomeScreenActivity homeScreen) {
+    /**
+     * The live {@link HomeViewFactory}s by their index
+     */
+    private final SparseArray<HomeViewFactory> activeFactories = new SparseArray<>();
+    private LoadPinnedList loadPinnedList;
+    private HomePage1 homePage1, staleHomePage1;
+    private final PreInflatedViews preInflatedViews;
+
+    public BaldPagerAdapter(HomeScreenActivity homeScreen, PreInflatedViews preInflatedViews) {
         this.homeScreen = homeScreen;
+        this.preInflatedViews = preInflatedViews;
         startingPage = (BPrefs.get(this.homeScreen).getBoolean(BPrefs.NOTE_VISIBLE_KEY, BPrefs.NOTE_VISIBLE_DEFAULT_VALUE) ? 2 : 1);
         numItems = numItemsBefore = startingPage + 1;
     }
 
-    public void obtainAppList() {
-        pinnedList = HomeScreenPinHelper.getAll(homeScreen);
-        numItems =
-                numItemsBefore + (pinnedList.size() / HomeViewFactory.AMOUNT_PER_PAGE + (pinnedList.size() % HomeViewFactory.AMOUNT_PER_PAGE == 0 ? 0 : 1));
+    /**
+     * Loads the pinned items and the most used apps in the background.
+     * Only the pages whose {@link HomeViewFactory#AMOUNT_PER_PAGE} items changed are bound again,
+     * so nothing happens if the pinned items did not change.
+     *
+     * @param onPageCountChanged called after pages were added or removed, may be null
+     */
+    public void obtainAppList(@Nullable Runnable onPageCountChanged) {
+        if (loadPinnedList != null)
+            loadPinnedList.cancel(false);
+        loadPinnedList = new LoadPinnedList(this, onPageCountChanged);
+        loadPinnedList.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, homeScreen.getApplicationContext());
+    }
+
+    private void onPinnedListLoaded(HomePages homePages, @Nullable Runnable onPageCountChanged) {
+        final List<HomeScreenPinHelper.HomeScreenPinnable> oldPinnedList = pinnedList;
+        final List<App> oldMostUsedList = mostUsedList;
+        pinnedList = homePages.pinnedList;
+        mostUsedList = homePages.mostUsedList;
+        final int oldNumItems = numItems;
+        final int numPages = getNumPages(pinnedList.size()) + (mostUsedList.isEmpty() ? 0 : 1);
+        numItems = numItemsBefore + numPages;
+
+        for (int i = 0; i < activeFactories.size(); i++) {
+            final int index = activeFactories.keyAt(i);
+            if (index < numPages && !isSamePage(oldPinnedList, oldMostUsedList, pinnedList, mostUsedList, index)) {
+                final HomeViewFactory homeViewFactory = activeFactories.valueAt(i);
+                homeViewFactory.recycle();
+                homeViewFactory.populate(index);
+            }
+        }
+
+        if (numItems != oldNumItems) {
+            notifyDataSetChanged();
+            if (onPageCountChanged != null)
+                onPageCountChanged.run();
+        }
+    }
+
+    /**
+     * Replaces the {@link HomePage1} with a new one, leaving the other pages as they are
+     */
+    public void recreateHomePage1() {
+        staleHomePage1 = homePage1;
         notifyDataSetChanged();
+        staleHomePage1 = null;
+    }
+
+    private static int getNumPages(int numPinned) {
+        return numPinned / HomeViewFactory.AMOUNT_PER_PAGE + (numPinned % HomeViewFactory.AMOUNT_PER_PAGE == 0 ? 0 : 1);
+    }
+
+    private static boolean isSamePage(List<HomeScreenPinHelper.HomeScreenPinnable> oldPinnedList, List<App> oldMostUsedList,
+                                      List<HomeScreenPinHelper.HomeScreenPinnable> newPinnedList, List<App> newMostUsedList, int index) {
+        if (isMostUsedPage(oldMostUsedList, index) != isMostUsedPage(newMostUsedList, index))
+            return false;
+        final List<? extends HomeScreenPinHelper.HomeScreenPinnable> oldPage = getPageItems(oldPinnedList, oldMostUsedList, index);
+        final List<? extends HomeScreenPinHelper.HomeScreenPinnable> newPage = getPageItems(newPinnedList, newMostUsedList, index);
+        if (oldPage.size() != newPage.size())
+            return false;
+        for (int i = 0; i < newPage.size(); i++)
+            if (!oldPage.get(i).isSameAs(newPage.get(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the items of the {@link HomeViewFactory} of the index
+     */
+    public List<? extends HomeScreenPinHelper.HomeScreenPinnable> getPageItems(int index) {
+        return getPageItems(pinnedList, mostUsedList, index);
+    }
+
+    public boolean isMostUsedPage(int index) {
+        return isMostUsedPage(mostUsedList, index);
+    }
+
+    private static boolean isMostUsedPage(List<App> mostUsedList, int index) {
+        return index == 0 && !mostUsedList.isEmpty();
+    }
+
+    private static List<? extends HomeScreenPinHelper.HomeScreenPinnable> getPageItems(List<HomeScreenPinHelper.HomeScreenPinnable> pinnedList, List<App> mostUsedList, int index) {
+        if (!mostUsedList.isEmpty()) {
+            if (index == 0)
+                return mostUsedList;
+            index--;
+        }
+        final int startIndex = Math.min(HomeViewFactory.AMOUNT_PER_PAGE * index, pinnedList.size());
+        final int endIndex = Math.min(startIndex + HomeViewFactory.AMOUNT_PER_PAGE, pinnedList.size());
+        return pinnedList.subList(startIndex, endIndex);
     }
 
     public View getItem(int position) {
         final View view;
         switch (position) {
             case -1:
-                view = new NotesView(homeScreen);
+                view = new NotesView(homeScreen, preInflatedViews.take(R.layout.notes_fragment));
                 view.setTag(NotesView.TAG);
                 break;
             case 0:
-                view = new HomePage2(homeScreen);
+                view = new HomePage2(homeScreen, preInflatedViews.take(R.layout.fragment_home_page2));
                 view.setTag(HomePage2.TAG);
                 break;
             case 1:
-                view = new HomePage1(homeScreen);
+                view = homePage1 = new HomePage1(homeScreen, preInflatedViews.take(R.layout.fragment_home_page1));
                 view.setTag(HomePage1.TAG);
                 break;
             default:
                 HomeViewFactory homeFragmentFactory = factoryPool.acquire();
                 if (homeFragmentFactory == null)
-                    homeFragmentFactory = new HomeViewFactory(homeScreen);
+                    homeFragmentFactory = new HomeViewFactory(homeScreen, preInflatedViews.take(R.layout.home_factory));
                 view = homeFragmentFactory;
                 ((HomeViewFactory) view).populate(position - 2);
                 view.setTag(HomeViewFactory.TAG + (position - 2));
+                activeFactories.put(position - 2, homeFragmentFactory);
                 break;
         }
         return view;
@@ -113,13 +228,85 @@ public class BaldPagerAdapter extends BaldViewAdapter {
         super.destroyItem(container, virtualPosition, object);
         if (object instanceof HomeViewFactory) {
             final HomeViewFactory homeFragmentFactory = (HomeViewFactory) object;
+            if (activeFactories.get(homeFragmentFactory.getIndex()) == homeFragmentFactory)
+                activeFactories.remove(homeFragmentFactory.getIndex());
             homeFragmentFactory.recycle();
             factoryPool.release(homeFragmentFactory);
         }
     }
 
+    /**
+     * Pages which still exist were already bound again if needed, by {@link #onPinnedListLoaded}.
+     * {@link HomePage1} is only replaced by {@link #recreateHomePage1}
+     */
     @Override
     public int getItemPosition(@NonNull Object object) {
-        return object instanceof HomeViewFactory ? POSITION_NONE : super.getItemPosition(object);
+        if (object instanceof HomeViewFactory)
+            return ((HomeViewFactory) object).getIndex() < numItems - numItemsBefore ? POSITION_UNCHANGED : POSITION_NONE;
+        if (object == staleHomePage1)
+            return POSITION_NONE;
+        return super.getItemPosition(object);
+    }
+
+    private static class HomePages {
+        final List<HomeScreenPinHelper.HomeScreenPinnable> pinnedList;
+        final List<App> mostUsedList;
+
+        HomePages(List<HomeScreenPinHelper.HomeScreenPinnable> pinnedList, List<App> mostUsedList) {
+            this.pinnedList = pinnedList;
+            this.mostUsedList = mostUsedList;
+        }
+    }
+
+    private static class LoadPinnedList extends AsyncTask<Context, Void, HomePages> {
+        private final WeakReference<BaldPagerAdapter> baldPagerAdapterWeakReference;
+        @Nullable
+        private final Runnable onPageCountChanged;
+
+        LoadPinnedList(BaldPagerAdapter baldPagerAdapter, @Nullable Runnable onPageCountChanged) {
+            super();
+            baldPagerAdapterWeakReference = new WeakReference<>(baldPagerAdapter);
+            this.onPageCountChanged = onPageCountChanged;
+        }
+
+        @Override
+        protected HomePages doInBackground(Context... contexts) {
+            final List<HomeScreenPinHelper.HomeScreenPinnable> pinnedList = HomeScreenPinHelper.getAll(contexts[0]);
+            return new HomePages(pinnedList, getMostUsed(contexts[0], pinnedList));
+        }
+
+        /**
+         * @return up to a page of the most used apps, without the pinned ones which are shown anyway
+         */
+        private static List<App> getMostUsed(Context context, List<HomeScreenPinHelper.HomeScreenPinnable> pinnedList) {
+            final Set<String> pinnedApps = new HashSet<>();
+            for (HomeScreenPinHelper.HomeScreenPinnable pinnable : pinnedList)
+                if (pinnable instanceof App)
+                    pinnedApps.add(((App) pinnable).getFlattenComponentName());
+            final List<String> mostUsedComponentNames =
+                    AppUsageTracker.getMostUsed(context, HomeViewFactory.AMOUNT_PER_PAGE + pinnedApps.size());
+            mostUsedComponentNames.removeAll(pinnedApps);
+            if (mostUsedComponentNames.isEmpty())
+                return Collections.emptyList();
+            final List<String> page = mostUsedComponentNames.subList(0, Math.min(HomeViewFactory.AMOUNT_PER_PAGE, mostUsedComponentNames.size()));
+            final Map<String, App> appsByComponentName = new HashMap<>();
+            for (App app : AppsDatabase.getInstance(context).appsDatabaseDao().findByFlattenComponentNames(page))
+                appsByComponentName.put(app.getFlattenComponentName(), app);
+            final List<App> mostUsed = new ArrayList<>(page.size());
+            for (String flattenComponentName : page) {
+                final App app = appsByComponentName.get(flattenComponentName);
+                // launches of apps which are not indexed, like uninstalled ones, are not shown
+                if (app != null)
+                    mostUsed.add(app);
+            }
+            return mostUsed;
+        }
+
+        @Override
+        protected void onPostExecute(HomePages homePages) {
+            final BaldPagerAdapter baldPagerAdapter = baldPagerAdapterWeakReference.get();
+            if (baldPagerAdapter != null)
+                baldPagerAdapter.onPinnedListLoaded(homePages, onPageCountChanged);
+        }
     }
 }
\ No newline at end of file
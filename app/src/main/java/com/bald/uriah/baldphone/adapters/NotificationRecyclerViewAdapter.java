@@ -19,12 +19,13 @@ package com.bald.uriah.baldphone.adapters;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.Icon;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Parcelable;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.TypedValue;
@@ -37,15 +38,24 @@ import android.widget.TextView;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.services.NotificationListenerService;
 import com.bald.uriah.baldphone.utils.BaldToast;
+import com.bald.uriah.baldphone.utils.NotificationIconLoader;
+import com.bald.uriah.baldphone.utils.PackageInfoCache;
 import com.bald.uriah.baldphone.utils.S;
 import com.bald.uriah.baldphone.views.BaldPictureTextButton;
 import com.bald.uriah.baldphone.views.ModularRecyclerView;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * using RecyclerView because of constant change of notification and NOT because of long scrolling list (most probably wont happen to elderly.)
  */
@@ -54,20 +64,20 @@ public class NotificationRecyclerViewAdapter extends ModularRecyclerView.Modular
     private final static int MAX_LETTERS = 60;
     @ColorInt
     private final int decoration_on_button;
+    private final int smallIconSize, largeIconSize;
     private final Context context;
     private final DisplayMetrics displayMetrics;
     private final LayoutInflater layoutInflater;
-    private final PackageManager packageManager;
-    //        most probably reading will happen only once for each bundle.
-    //          thus converting to old java objects wont really help..
-    private Bundle[] bundles;
+    private List<NotificationItem> items;
 
     public NotificationRecyclerViewAdapter(final Context context, final Bundle[] bundles) {
         this.context = context;
-        this.bundles = bundles;
+        this.items = buildItems(bundles);
         layoutInflater = LayoutInflater.from(context);
-        packageManager = context.getPackageManager();
         displayMetrics = context.getResources().getDisplayMetrics();
+        // the sizes of small_icon and large_icon in notification.xml
+        smallIconSize = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 30, displayMetrics);
+        largeIconSize = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 50, displayMetrics);
 
         final TypedValue typedValue = new TypedValue();
         final Resources.Theme theme = context.getTheme();
@@ -90,24 +100,109 @@ public class NotificationRecyclerViewAdapter extends ModularRecyclerView.Modular
 
     @Override
     public int getItemCount() {
-        return bundles.length;
+        return items.size();
     }
 
     public void clearAll() {
         LocalBroadcastManager localBroadcastManager = LocalBroadcastManager.getInstance(context);
-        for (int i = 0; i < bundles.length; i++) {
+        for (final NotificationItem item : items) {
             localBroadcastManager.sendBroadcast(
                     new Intent(NotificationListenerService.ACTION_CLEAR)
-                            .putExtra(NotificationListenerService.KEY_EXTRA_KEY, bundles[i].getString(NotificationListenerService.KEY_EXTRA_KEY))
+                            .putExtra(NotificationListenerService.KEY_EXTRA_KEY, item.key)
 
             );
         }
 
     }
 
+    /**
+     * Replaces the notifications, notifying only about the items which were inserted, removed or changed
+     */
     public void changeNotifications(Bundle[] bundles) {
-        this.bundles = bundles;
-        notifyDataSetChanged();
+        final List<NotificationItem> newItems = buildItems(bundles);
+        final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new ItemsDiffCallback(items, newItems));
+        items = newItems;
+        diffResult.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * notifications of the same app are shown as a group under its first notification,
+     * and the summary of a group is shrunk unless it is the only notification of its app.
+     */
+    private static List<NotificationItem> buildItems(Bundle[] bundles) {
+        final Map<CharSequence, Integer> notificationsPerApp = new HashMap<>();
+        for (final Bundle bundle : bundles) {
+            final CharSequence appName = bundle.getCharSequence("app_name");
+            final Integer count = notificationsPerApp.get(appName);
+            notificationsPerApp.put(appName, count == null ? 1 : count + 1);
+        }
+        final List<NotificationItem> items = new ArrayList<>(bundles.length);
+        CharSequence previousAppName = null;
+        for (int i = 0; i < bundles.length; i++) {
+            final Bundle bundle = bundles[i];
+            final CharSequence appName = bundle.getCharSequence("app_name");
+            items.add(new NotificationItem(bundle,
+                    i == 0 || !previousAppName.equals(appName),
+                    bundle.getBoolean("summery") && notificationsPerApp.get(appName) > 1));
+            previousAppName = appName;
+        }
+        return items;
+    }
+
+    /**
+     * what a single notification shows, computed once for every change of the notifications
+     */
+    private static class NotificationItem {
+        final Bundle bundle;
+        final String key;
+        final CharSequence appName, title, text;
+        final boolean first, summery;
+
+        NotificationItem(Bundle bundle, boolean first, boolean summery) {
+            this.bundle = bundle;
+            this.key = bundle.getString(NotificationListenerService.KEY_EXTRA_KEY);
+            this.appName = bundle.getCharSequence("app_name");
+            this.title = bundle.getCharSequence("title");
+            CharSequence text = bundle.getCharSequence("text");
+            if (text != null && text.length() > MAX_LETTERS)
+                text = String.valueOf(text).substring(0, MAX_LETTERS).concat("...");
+            this.text = text;
+            this.first = first;
+            this.summery = summery;
+        }
+    }
+
+    private static class ItemsDiffCallback extends DiffUtil.Callback {
+        private final List<NotificationItem> oldList, newList;
+
+        ItemsDiffCallback(List<NotificationItem> oldList, List<NotificationItem> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return Objects.equals(oldList.get(oldItemPosition).key, newList.get(newItemPosition).key);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            final NotificationItem oldItem = oldList.get(oldItemPosition), newItem = newList.get(newItemPosition);
+            // the service makes a new bundle whenever a notification is updated
+            return oldItem.bundle == newItem.bundle
+                    && oldItem.first == newItem.first
+                    && oldItem.summery == newItem.summery;
+        }
     }
 
     public class ViewHolder extends RecyclerView.ViewHolder {
@@ -128,9 +223,9 @@ public class NotificationRecyclerViewAdapter extends ModularRecyclerView.Modular
         }
 
         public void update(final int position) {
-            final Bundle item = bundles[position];
-            final CharSequence app_name_string = item.getCharSequence("app_name");
-            final boolean first = position == 0 || !bundles[position - 1].getCharSequence("app_name").equals(app_name_string);
+            final NotificationItem notificationItem = items.get(position);
+            final Bundle item = notificationItem.bundle;
+            final boolean first = notificationItem.first;
             {
                 final RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) itemView.getLayoutParams();
                 layoutParams.topMargin = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
@@ -139,40 +234,53 @@ public class NotificationRecyclerViewAdapter extends ModularRecyclerView.Modular
                 itemView.setLayoutParams(layoutParams);
             }
 
-            final CharSequence packageName = item.getCharSequence("packageName");
+            final String packageName = String.valueOf(item.getCharSequence("packageName"));
             if (first) {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                     final Icon icon = item.getParcelable("small_icon");
                     if (icon != null)
-                        small_icon.setImageIcon(icon.setTint(decoration_on_button));
+                        NotificationIconLoader.load(small_icon, notificationItem.key + "/small/" + item.getLong("revision"),
+                                smallIconSize, decoration_on_button,
+                                (context, size) -> NotificationIconLoader.decodeIcon(context, icon, size), null);
+                    else
+                        NotificationIconLoader.clear(small_icon);
                 } else {
-                    try {
-                        Resources resources = packageManager.getResourcesForApplication(String.valueOf(packageName));
-                        final Drawable drawable = resources.getDrawable(item.getInt("small_icon"), null);
-                        drawable.setTint(decoration_on_button);
-                        small_icon.setImageDrawable(drawable);
-                    } catch (PackageManager.NameNotFoundException e) {
-                        Log.e(TAG, e.getMessage());
-                        e.printStackTrace();
-                        throw new RuntimeException(e);
-                    }
+                    final int smallIcon = item.getInt("small_icon");
+                    // resource icons are the same for every notification of the app
+                    NotificationIconLoader.load(small_icon, packageName + "/" + smallIcon, smallIconSize, decoration_on_button,
+                            (context, size) -> {
+                                final Bitmap bitmap = NotificationIconLoader.decodeResource(
+                                        context.getPackageManager().getResourcesForApplication(packageName), smallIcon, size);
+                                if (bitmap != null)
+                                    return bitmap;
+                                // not a bitmap resource, vectors are cheap to draw at size
+                                final Drawable drawable = PackageInfoCache.getSmallIcon(context, packageName, smallIcon, decoration_on_button);
+                                return drawable == null ? null : S.getBitmapFromDrawable(drawable, size);
+                            }, null);
                 }
-                app_name.setText(app_name_string);
+                app_name.setText(notificationItem.appName);
             }
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                large_icon.setImageIcon(item.getParcelable("large_icon"));
+            // the service gives every version of a notification a new revision, so it identifies the icons
+            final Parcelable largeIcon = item.getParcelable("large_icon");
+            if (largeIcon == null) {
+                NotificationIconLoader.clear(large_icon);
+                large_icon.setVisibility(View.GONE);
             } else {
-                large_icon.setImageBitmap(item.getParcelable("large_item"));
+                large_icon.setVisibility(notificationItem.summery ? View.GONE : View.VISIBLE);
+                NotificationIconLoader.load(large_icon, notificationItem.key + "/large/" + item.getLong("revision"),
+                        largeIconSize, null,
+                        Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                                ? (context, size) -> NotificationIconLoader.decodeIcon(context, (Icon) largeIcon, size)
+                                // already decoded by the sender, the loader only scales it down
+                                : (context, size) -> (Bitmap) largeIcon,
+                        loaded -> {
+                            if (!loaded)
+                                large_icon.setVisibility(View.GONE);
+                        });
             }
 
-            large_icon.setVisibility(large_icon.getDrawable() == null ? View.GONE : View.VISIBLE);
-
-            title.setText(item.getCharSequence("title"));
-            CharSequence notification_text = item.getCharSequence("text");
-            if (notification_text != null)
-                if (notification_text.length() > MAX_LETTERS)
-                    notification_text = String.valueOf(notification_text).substring(0, MAX_LETTERS).concat("...");
-            this.text.setText(notification_text);
+            title.setText(notificationItem.title);
+            this.text.setText(notificationItem.text);
             final long timeStamp = item.getLong("time_stamp");
             if (timeStamp == 0L) {
                 time_stamp.setText("");
@@ -193,16 +301,12 @@ public class NotificationRecyclerViewAdapter extends ModularRecyclerView.Modular
             } else
                 itemView.setOnClickListener(null);
             final boolean clearable = item.getBoolean("clearable");
-            boolean flag_summery = item.getBoolean("summery");
-            if (flag_summery)
-                if (isAlone(position, String.valueOf(app_name_string)))
-                    flag_summery = false;
+            final boolean flag_summery = notificationItem.summery;
             if (this.first != first || this.summery != flag_summery) {
                 if (this.summery != flag_summery) {
                     final int summeryVisibility = flag_summery ? View.GONE : View.VISIBLE;
                     this.text.setVisibility(summeryVisibility);
                     this.title.setVisibility(summeryVisibility);
-                    this.large_icon.setVisibility(summeryVisibility);
                     this.clear.setVisibility(summeryVisibility);
                     this.time_stamp.setVisibility(summeryVisibility);
                 }
@@ -224,7 +328,7 @@ public class NotificationRecyclerViewAdapter extends ModularRecyclerView.Modular
                     LocalBroadcastManager.getInstance(context)
                             .sendBroadcast(
                                     new Intent(NotificationListenerService.ACTION_CLEAR)
-                                            .putExtra(NotificationListenerService.KEY_EXTRA_KEY, item.getString(NotificationListenerService.KEY_EXTRA_KEY))
+                                            .putExtra(NotificationListenerService.KEY_EXTRA_KEY, notificationItem.key)
 
                             );
                 });
@@ -234,16 +338,6 @@ public class NotificationRecyclerViewAdapter extends ModularRecyclerView.Modular
 
         }
 
-        private boolean isAlone(int position, final String app_name_string) {
-            for (int i = 0; i < bundles.length; i++) {
-                if (i == position)
-                    continue;
-                if (bundles[i].getString("app_name").equals(app_name_string))
-                    return false;
-            }
-            return true;
-        }
-
     }
 }
 
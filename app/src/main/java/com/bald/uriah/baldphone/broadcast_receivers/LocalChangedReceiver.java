@@ -20,6 +20,8 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 
+import com.bald.uriah.baldphone.databases.apps.AppsIndexer;
+
 /**
  * Broadcast receiver to know when local changes.
  */
@@ -28,6 +30,7 @@ public class LocalChangedReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         if (intent.getAction() != null && intent.getAction().equals(Intent.ACTION_LOCALE_CHANGED)) {
             //caches to clear when local changes:
+            AppsIndexer.onLocaleChanged(context);
         }
     }
 }
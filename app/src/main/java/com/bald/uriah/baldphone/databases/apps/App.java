@@ -21,6 +21,7 @@ import android.content.ComponentName;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import com.bald.uriah.baldphone.adapters.AppsRecyclerViewAdapter;
@@ -28,7 +29,6 @@ import com.bald.uriah.baldphone.databases.home_screen_pins.HomeScreenPinHelper;
 import com.bald.uriah.baldphone.utils.S;
 import com.bald.uriah.baldphone.views.HomeScreenAppView;
 
-import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -38,7 +38,7 @@ import java.util.Objects;
  * using this old java getters and setters because Room requires that.
  * see {@link Entity}
  */
-@Entity
+@Entity(indices = {@Index(value = "flatten_component_name", unique = true)})
 public class App implements AppsRecyclerViewAdapter.InAppsRecyclerView, HomeScreenPinHelper.HomeScreenPinnable {
 
     @PrimaryKey(autoGenerate = true)
@@ -47,15 +47,40 @@ public class App implements AppsRecyclerViewAdapter.InAppsRecyclerView, HomeScre
     @ColumnInfo(name = "flatten_component_name")
     private String flattenComponentName;
 
-    @ColumnInfo(name = "icon")
-    private byte[] icon;
+    /**
+     * key of the icon in {@link AppIconStore}, null if it could not be loaded
+     */
+    @ColumnInfo(name = "icon_key")
+    private String iconKey;
 
     @ColumnInfo(name = "label")
     private String label;
 
-    @ColumnInfo(name = "pinned")
+    /**
+     * not stored with the app, see {@link HomeScreenPinHelper#markPinnedApps}
+     */
+    @Ignore
     private boolean pinned;
 
+    /**
+     * collation key of the label, see {@link LabelIndex}
+     */
+    @ColumnInfo(name = "sort_key", typeAffinity = ColumnInfo.BLOB)
+    private byte[] sortKey;
+
+    /**
+     * the header the app is under in the apps list, see {@link LabelIndex}
+     */
+    @ColumnInfo(name = "section")
+    private String section;
+
+    /**
+     * {@link android.content.pm.PackageInfo#lastUpdateTime} of the package when the label and icon were loaded,
+     * 0 if they were not loaded completely
+     */
+    @ColumnInfo(name = "last_update_time", defaultValue = "0")
+    private long lastUpdateTime;
+
     @Ignore
     @Override
     public int type() {
@@ -70,12 +95,12 @@ public class App implements AppsRecyclerViewAdapter.InAppsRecyclerView, HomeScre
         this.flattenComponentName = flattenComponentName;
     }
 
-    public byte[] getIcon() {
-        return icon;
+    public String getIconKey() {
+        return iconKey;
     }
 
-    public void setIcon(byte[] icon) {
-        this.icon = icon;
+    public void setIconKey(String iconKey) {
+        this.iconKey = iconKey;
     }
 
     public String getLabel() {
@@ -102,23 +127,49 @@ public class App implements AppsRecyclerViewAdapter.InAppsRecyclerView, HomeScre
         this.pinned = pinned;
     }
 
+    public byte[] getSortKey() {
+        return sortKey;
+    }
+
+    public void setSortKey(byte[] sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public void setSection(String section) {
+        this.section = section;
+    }
+
+    public long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    public void setLastUpdateTime(long lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        final App app = (App) o;
-        return id == app.id &&
-                pinned == app.pinned &&
-                Objects.equals(flattenComponentName, app.flattenComponentName) &&
-                Arrays.equals(icon, app.icon) &&
-                Objects.equals(label, app.label);
+        return id == ((App) o).id;
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(id, flattenComponentName, label, pinned);
-        result = 31 * result + Arrays.hashCode(icon);
-        return result;
+        return id;
+    }
+
+    @Ignore
+    @Override
+    public boolean isSameAs(HomeScreenPinHelper.HomeScreenPinnable other) {
+        if (!(other instanceof App))
+            return false;
+        final App app = (App) other;
+        return id == app.id && Objects.equals(label, app.label) && Objects.equals(iconKey, app.iconKey);
     }
 
     @Ignore
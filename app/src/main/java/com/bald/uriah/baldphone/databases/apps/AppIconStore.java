@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.databases.apps;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bald.uriah.baldphone.utils.S;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Content addressed store of the apps icons.
+ * Each icon is a file named by the SHA-1 of its bytes, so an {@link App} row holds only that small key
+ * and identical icons are stored once.
+ * The key ends with the extension of the icon's format; keys without one were written before and are PNGs.
+ */
+public class AppIconStore {
+    private static final String TAG = AppIconStore.class.getSimpleName();
+    private static final String DIRECTORY = "app_icons";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String PNG_EXTENSION = ".png";
+    private static final String WEBP_EXTENSION = ".webp";
+
+    private AppIconStore() {
+    }
+
+    /**
+     * Encodes the icon as lossless WebP where the platform supports it (API 30), which is much smaller than PNG.
+     *
+     * @return the key of the icon, or null if it could not be written
+     */
+    @Nullable
+    public static String put(@NonNull Context context, @NonNull Bitmap icon) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R)
+            return put(context, S.bitmapToByteArray(icon, Bitmap.CompressFormat.WEBP_LOSSLESS), WEBP_EXTENSION);
+        return put(context, S.bitmapToByteArray(icon, Bitmap.CompressFormat.PNG), PNG_EXTENSION);
+    }
+
+    /**
+     * @param png an already encoded PNG icon
+     * @return the key of the icon, or null if it could not be written
+     */
+    @Nullable
+    public static String put(@NonNull Context context, @NonNull byte[] png) {
+        return put(context, png, PNG_EXTENSION);
+    }
+
+    @Nullable
+    private static String put(@NonNull Context context, @NonNull byte[] icon, @NonNull String extension) {
+        final String key = hash(icon) + extension;
+        final File file = getFile(context, key);
+        if (file.exists())
+            return key;
+        final File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "put: cannot create " + directory);
+            return null;
+        }
+        // written to a temporary file first, so a file with a key name is always complete.
+        // the thread id keeps two workers which extract the same icon from writing the same file
+        final File temporaryFile = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temporaryFile)) {
+            fileOutputStream.write(icon);
+        } catch (IOException e) {
+            Log.e(TAG, "put: " + e.getMessage(), e);
+            temporaryFile.delete();
+            return null;
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            return file.exists() ? key : null;
+        }
+        return key;
+    }
+
+    @NonNull
+    public static File getFile(@NonNull Context context, @NonNull String key) {
+        return new File(new File(context.getFilesDir(), DIRECTORY), key);
+    }
+
+    /**
+     * Deletes every icon whose key is not in keys
+     */
+    public static void retainOnly(@NonNull Context context, @NonNull Collection<String> keys) {
+        final File[] files = new File(context.getFilesDir(), DIRECTORY).listFiles();
+        if (files == null)
+            return;
+        final Set<String> keySet = new HashSet<>(keys);
+        for (File file : files)
+            if (!keySet.contains(file.getName()))
+                file.delete();
+    }
+
+    public static void clear(@NonNull Context context) {
+        retainOnly(context, new HashSet<>());
+    }
+
+    @NonNull
+    private static String hash(@NonNull byte[] bytes) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // SHA-1 is required on every platform
+        }
+        final char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bald.uriah.baldphone.databases.apps;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * How much an activity is launched, see {@link AppUsageTracker}.
+ * Kept apart from {@link App}, so clearing the apps cache does not forget it.
+ */
+@Entity
+public class AppUsage {
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "flatten_component_name")
+    private String flattenComponentName = "";
+
+    /**
+     * the decayed number of launches, as of {@link #lastLaunch}
+     */
+    @ColumnInfo(name = "score")
+    private double score;
+
+    @ColumnInfo(name = "last_launch")
+    private long lastLaunch;
+
+    @NonNull
+    public String getFlattenComponentName() {
+        return flattenComponentName;
+    }
+
+    public void setFlattenComponentName(@NonNull String flattenComponentName) {
+        this.flattenComponentName = flattenComponentName;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public long getLastLaunch() {
+        return lastLaunch;
+    }
+
+    public void setLastLaunch(long lastLaunch) {
+        this.lastLaunch = lastLaunch;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bald.uriah.baldphone.databases.apps;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bald.uriah.baldphone.utils.D;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ranks activities by how often and how recently they were launched.
+ * Every launch adds 1 to the score of the activity, and scores decay by half every {@link #HALF_LIFE}.
+ * Launches are counted in memory and written to {@link AppUsage} in batches - after {@link #FLUSH_EVERY} launches,
+ * or when a {@link com.bald.uriah.baldphone.activities.BaldActivity} pauses; rankings are served from memory.
+ * The counters are read from the database in the background, by {@link #loadInBackground}, until then the ranking is empty.
+ */
+public class AppUsageTracker {
+    private static final String TAG = AppUsageTracker.class.getSimpleName();
+    private static final long HALF_LIFE = 7L * D.DAY;
+    private static final int FLUSH_EVERY = 10;
+    /**
+     * about a single launch two months ago, such usages are forgotten
+     */
+    private static final double MIN_SCORE = 0.002;
+    private static final Map<String, AppUsage> usages = new HashMap<>();
+    private static final Set<String> dirty = new HashSet<>();
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static boolean loading, loaded;
+
+    private AppUsageTracker() {
+    }
+
+    public static synchronized void recordLaunch(@NonNull Context context, @NonNull ComponentName componentName) {
+        loadInBackground(context);
+        final String flattenComponentName = componentName.flattenToString();
+        final long now = System.currentTimeMillis();
+        AppUsage appUsage = usages.get(flattenComponentName);
+        if (appUsage == null) {
+            appUsage = new AppUsage();
+            appUsage.setFlattenComponentName(flattenComponentName);
+            usages.put(flattenComponentName, appUsage);
+        }
+        appUsage.setScore(getScore(appUsage, now) + 1);
+        appUsage.setLastLaunch(now);
+        dirty.add(flattenComponentName);
+        if (dirty.size() >= FLUSH_EVERY)
+            flush(context);
+    }
+
+    /**
+     * @return up to count flatten component names, the most used first, none if the counters were not loaded yet
+     */
+    @NonNull
+    public static synchronized List<String> getMostUsed(@NonNull Context context, int count) {
+        loadInBackground(context);
+        if (!loaded)
+            return new ArrayList<>();
+        final long now = System.currentTimeMillis();
+        final List<AppUsage> appUsages = new ArrayList<>(usages.values());
+        final Map<AppUsage, Double> scores = new HashMap<>(appUsages.size() * 2);
+        for (AppUsage appUsage : appUsages)
+            scores.put(appUsage, getScore(appUsage, now));
+        Collections.sort(appUsages, (o1, o2) -> Double.compare(scores.get(o2), scores.get(o1)));
+        final List<String> mostUsed = new ArrayList<>(Math.min(count, appUsages.size()));
+        for (int i = 0; i < appUsages.size() && mostUsed.size() < count; i++)
+            mostUsed.add(appUsages.get(i).getFlattenComponentName());
+        return mostUsed;
+    }
+
+    /**
+     * Writes the launches which were not written yet, in the background
+     */
+    public static synchronized void flush(@NonNull Context context) {
+        // the launches would replace the rows which were not loaded yet, they are written after the load
+        if (!loaded || dirty.isEmpty())
+            return;
+        final List<AppUsage> toWrite = new ArrayList<>(dirty.size());
+        for (String flattenComponentName : dirty)
+            toWrite.add(copy(usages.get(flattenComponentName)));
+        dirty.clear();
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            try {
+                AppsDatabase.getInstance(appContext).appUsageDao().insertAll(toWrite);
+            } catch (Exception e) {
+                Log.e(TAG, "flush: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Reads the counters from the database once, on the executor which writes them
+     */
+    public static synchronized void loadInBackground(@NonNull Context context) {
+        if (loading || loaded)
+            return;
+        loading = true;
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            final AppUsageDao appUsageDao = AppsDatabase.getInstance(appContext).appUsageDao();
+            List<AppUsage> appUsages;
+            try {
+                appUsages = appUsageDao.getAll();
+            } catch (Exception e) {
+                Log.e(TAG, "loadInBackground: " + e.getMessage(), e);
+                appUsages = Collections.emptyList();
+            }
+            final List<String> forgotten = onLoaded(appContext, appUsages);
+            if (!forgotten.isEmpty())
+                appUsageDao.deleteAll(forgotten);
+        });
+    }
+
+    /**
+     * Merges the loaded counters with the launches which were recorded while they were loading
+     *
+     * @return the usages which are too old to be kept
+     */
+    private static synchronized List<String> onLoaded(Context context, List<AppUsage> appUsages) {
+        final long now = System.currentTimeMillis();
+        final List<String> forgotten = new ArrayList<>();
+        for (AppUsage appUsage : appUsages) {
+            final AppUsage recorded = usages.get(appUsage.getFlattenComponentName());
+            if (recorded != null) {
+                recorded.setScore(getScore(appUsage, recorded.getLastLaunch()) + recorded.getScore());
+            } else if (getScore(appUsage, now) < MIN_SCORE) {
+                forgotten.add(appUsage.getFlattenComponentName());
+            } else {
+                usages.put(appUsage.getFlattenComponentName(), appUsage);
+            }
+        }
+        loading = false;
+        loaded = true;
+        flush(context);
+        return forgotten;
+    }
+
+    private static double getScore(AppUsage appUsage, long now) {
+        return appUsage.getScore() * Math.pow(0.5, (double) (now - appUsage.getLastLaunch()) / HALF_LIFE);
+    }
+
+    /**
+     * rows are written on another thread, while the tracker keeps updating its own objects
+     */
+    private static AppUsage copy(AppUsage appUsage) {
+        final AppUsage copy = new AppUsage();
+        copy.setFlattenComponentName(appUsage.getFlattenComponentName());
+        copy.setScore(appUsage.getScore());
+        copy.setLastLaunch(appUsage.getLastLaunch());
+        return copy;
+    }
+}
@@ -17,24 +17,190 @@
 package com.bald.uriah.baldphone.databases.apps;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.text.TextUtils;
+import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {App.class}, version = 1, exportSchema = false)
+import com.bald.uriah.baldphone.databases.home_screen_pins.HomeScreenPinHelper;
+import com.bald.uriah.baldphone.databases.home_screen_pins.Pin;
+import com.bald.uriah.baldphone.databases.home_screen_pins.PinDao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Database(entities = {App.class, AppUsage.class, Pin.class}, version = 7, exportSchema = false)
 public abstract class AppsDatabase extends RoomDatabase {
+    private static final String TAG = AppsDatabase.class.getSimpleName();
     private static final Object LOCK = new Object();
     private static AppsDatabase appsDatabase = null;
 
+    /**
+     * Adds a unique index on flatten_component_name.
+     * Two updates could run at the same time before, so duplicated rows are merged first.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("UPDATE App SET pinned = 1 WHERE flatten_component_name IN (SELECT flatten_component_name FROM App WHERE pinned = 1)");
+            database.execSQL("DELETE FROM App WHERE id NOT IN (SELECT MIN(id) FROM App GROUP BY flatten_component_name)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS index_App_flatten_component_name ON App (flatten_component_name)");
+        }
+    };
+
+    /**
+     * Moves the icons out of the App table into {@link AppIconStore}, leaving only their keys.
+     * SQLite cannot drop a column, so the table is rebuilt.
+     */
+    static Migration migration2To3(final Context context) {
+        return new Migration(2, 3) {
+            @Override
+            public void migrate(@NonNull SupportSQLiteDatabase database) {
+                database.execSQL("CREATE TABLE IF NOT EXISTS App_new (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, flatten_component_name TEXT, icon_key TEXT, label TEXT, pinned INTEGER NOT NULL)");
+                database.execSQL("INSERT INTO App_new (id, flatten_component_name, label, pinned) SELECT id, flatten_component_name, label, pinned FROM App");
+                try (Cursor cursor = database.query("SELECT id, icon FROM App WHERE icon IS NOT NULL")) {
+                    while (cursor.moveToNext()) {
+                        final String iconKey = AppIconStore.put(context, cursor.getBlob(1));
+                        if (iconKey != null)
+                            database.execSQL("UPDATE App_new SET icon_key = ? WHERE id = ?", new Object[]{iconKey, cursor.getInt(0)});
+                    }
+                }
+                database.execSQL("DROP TABLE App");
+                database.execSQL("ALTER TABLE App_new RENAME TO App");
+                database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS index_App_flatten_component_name ON App (flatten_component_name)");
+            }
+        };
+    }
+
+    /**
+     * Adds the sort key and section columns, they are computed by {@link AppsIndexer} on its next sync
+     * since the locale the rows were indexed for is not known yet.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE App ADD COLUMN sort_key BLOB");
+            database.execSQL("ALTER TABLE App ADD COLUMN section TEXT");
+        }
+    };
+
+    /**
+     * Adds last_update_time, existing rows get 0 so they are refreshed the next time their package is reconciled.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE App ADD COLUMN last_update_time INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS AppUsage (flatten_component_name TEXT NOT NULL, score REAL NOT NULL, last_launch INTEGER NOT NULL, PRIMARY KEY(flatten_component_name))");
+        }
+    };
+
+    /**
+     * Moves the pinned apps (the pinned column of App) and the pinned contacts (a set in the shared preferences)
+     * into the pins table. Apps come first, by their label, and then contacts, by their name, like they were shown before.
+     * SQLite cannot drop a column, so the App table is rebuilt.
+     */
+    static Migration migration6To7(final Context context) {
+        return new Migration(6, 7) {
+            @Override
+            public void migrate(@NonNull SupportSQLiteDatabase database) {
+                database.execSQL("CREATE TABLE IF NOT EXISTS pins (type INTEGER NOT NULL, `key` TEXT NOT NULL, position INTEGER NOT NULL, PRIMARY KEY(type, `key`))");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_pins_position ON pins (position)");
+                final List<String> pinnedApps = new ArrayList<>();
+                try (Cursor cursor = database.query("SELECT flatten_component_name FROM App WHERE pinned = 1 AND flatten_component_name IS NOT NULL ORDER BY label ASC")) {
+                    while (cursor.moveToNext())
+                        pinnedApps.add(cursor.getString(0));
+                }
+                int position = 0;
+                for (String flattenComponentName : pinnedApps)
+                    database.execSQL("INSERT OR IGNORE INTO pins (type, `key`, position) VALUES (?, ?, ?)", new Object[]{Pin.TYPE_APP, flattenComponentName, position++});
+                final Set<String> lookupKeys =
+                        context.getSharedPreferences(HomeScreenPinHelper.SHARED_PREFS_KEY, Context.MODE_PRIVATE)
+                                .getStringSet(HomeScreenPinHelper.SET_KEY, null);
+                if (lookupKeys != null) {
+                    final List<String> pinnedContacts = sortByDisplayName(context, lookupKeys);
+                    for (String lookupKey : pinnedContacts)
+                        if (!TextUtils.isEmpty(lookupKey))
+                            database.execSQL("INSERT OR IGNORE INTO pins (type, `key`, position) VALUES (?, ?, ?)", new Object[]{Pin.TYPE_CONTACT, lookupKey, position++});
+                }
+
+                database.execSQL("CREATE TABLE IF NOT EXISTS App_new (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, flatten_component_name TEXT, icon_key TEXT, label TEXT, sort_key BLOB, section TEXT, last_update_time INTEGER NOT NULL DEFAULT 0)");
+                database.execSQL("INSERT INTO App_new (id, flatten_component_name, icon_key, label, sort_key, section, last_update_time) SELECT id, flatten_component_name, icon_key, label, sort_key, section, last_update_time FROM App");
+                database.execSQL("DROP TABLE App");
+                database.execSQL("ALTER TABLE App_new RENAME TO App");
+                database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS index_App_flatten_component_name ON App (flatten_component_name)");
+
+                context.getSharedPreferences(HomeScreenPinHelper.SHARED_PREFS_KEY, Context.MODE_PRIVATE)
+                        .edit()
+                        .remove(HomeScreenPinHelper.SET_KEY)
+                        .apply();
+            }
+        };
+    }
+
+    /**
+     * Contacts which were not found, or all of them if the contacts cannot be read, come last by their lookup key
+     */
+    private static List<String> sortByDisplayName(Context context, Set<String> lookupKeys) {
+        final List<String> keys = new ArrayList<>(lookupKeys);
+        keys.remove("");
+        if (keys.isEmpty())
+            return keys;
+        final Map<String, String> displayNames = new HashMap<>(keys.size());
+        try (Cursor cursor = context.getContentResolver().query(
+                ContactsContract.Contacts.CONTENT_URI,
+                new String[]{ContactsContract.Contacts.LOOKUP_KEY, ContactsContract.Contacts.DISPLAY_NAME},
+                ContactsContract.Contacts.LOOKUP_KEY + " IN (" + TextUtils.join(",", Collections.nCopies(keys.size(), "?")) + ")",
+                keys.toArray(new String[0]),
+                null)) {
+            while (cursor != null && cursor.moveToNext())
+                if (cursor.getString(1) != null)
+                    displayNames.put(cursor.getString(0), cursor.getString(1));
+        } catch (Exception e) {
+            Log.e(TAG, "sortByDisplayName: " + e.getMessage(), e);
+        }
+        Collections.sort(keys, (o1, o2) -> {
+            final String name1 = displayNames.get(o1), name2 = displayNames.get(o2);
+            if (name1 == null || name2 == null)
+                return name1 != null ? -1 : name2 != null ? 1 : o1.compareTo(o2);
+            final int byName = name1.compareTo(name2);
+            return byName != 0 ? byName : o1.compareTo(o2);
+        });
+        return keys;
+    }
+
     public static AppsDatabase getInstance(Context context) {
         synchronized (LOCK) {
             if (appsDatabase == null)
                 appsDatabase = Room.databaseBuilder(context.getApplicationContext(),
-                        AppsDatabase.class, "applications").allowMainThreadQueries().build();
+                        AppsDatabase.class, "applications")
+                        .addMigrations(MIGRATION_1_2, migration2To3(context.getApplicationContext()), MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, migration6To7(context.getApplicationContext()))
+                        .allowMainThreadQueries()
+                        .build();
             return appsDatabase;
         }
     }
 
     public abstract AppsDatabaseDao appsDatabaseDao();
+
+    public abstract AppUsageDao appUsageDao();
+
+    public abstract PinDao pinDao();
 }
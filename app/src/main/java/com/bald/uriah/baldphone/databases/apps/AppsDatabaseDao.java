@@ -22,6 +22,7 @@ import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 @Dao
@@ -32,18 +33,38 @@ public interface AppsDatabaseDao {
     @Query("SELECT * FROM App WHERE label LIKE :filter")
     List<App> getAllLike(String filter);
 
-    @Query("SELECT * FROM App ORDER BY LOWER(label)")
+    /**
+     * ordered by the collation of the locale the sort keys were computed for, see {@link LabelIndex}.
+     * rows without a sort key yet come first, ordered by their label
+     */
+    @Query("SELECT * FROM App ORDER BY sort_key, LOWER(label)")
     List<App> getAllOrderedByABC();
 
-    @Query("SELECT * FROM App WHERE pinned = 1 ORDER BY label ASC")
-    List<App> getAllPinned();
+    @Query("SELECT id, flatten_component_name, last_update_time FROM App")
+    List<AppsDiff.IndexedComponent> getAllComponents();
 
-    @Query("UPDATE App SET pinned=:pinned WHERE id = :id")
-    void update(int id, boolean pinned);
+    @Query("SELECT DISTINCT icon_key FROM App WHERE icon_key IS NOT NULL")
+    List<String> getAllIconKeys();
 
-    @Query("SELECT * FROM App WHERE flatten_component_name LIKE :flattenComponentName LIMIT 1")
+    @Query("SELECT * FROM App WHERE flatten_component_name = :flattenComponentName LIMIT 1")
     App findByFlattenComponentName(String flattenComponentName);
 
+    @Query("SELECT * FROM App WHERE flatten_component_name IN (:flattenComponentNames)")
+    List<App> findByFlattenComponentNames(Collection<String> flattenComponentNames);
+
+    /**
+     * flatten component names are "package/activity", and '0' comes right after '/',
+     * so this range holds exactly the activities of the package.
+     */
+    @Query("SELECT id, flatten_component_name, last_update_time FROM App WHERE flatten_component_name >= :packageName || '/' AND flatten_component_name < :packageName || '0'")
+    List<AppsDiff.IndexedComponent> getAllOfPackage(String packageName);
+
+    @Query("UPDATE App SET label = :label, sort_key = :sortKey, section = :section WHERE flatten_component_name = :flattenComponentName")
+    void updateLabel(String flattenComponentName, String label, byte[] sortKey, String section);
+
+    @Query("UPDATE App SET icon_key = :iconKey, last_update_time = :lastUpdateTime WHERE flatten_component_name = :flattenComponentName")
+    void updateIcon(String flattenComponentName, String iconKey, long lastUpdateTime);
+
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     void insertAll(App... apps);
 
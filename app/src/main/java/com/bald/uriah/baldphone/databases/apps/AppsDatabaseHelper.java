@@ -20,13 +20,16 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
 import android.widget.ImageView;
 
+import androidx.annotation.Nullable;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
 import com.bald.uriah.baldphone.BuildConfig;
 import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.activities.AppsActivity;
@@ -41,11 +44,22 @@ import com.bald.uriah.baldphone.activities.media.VideosActivity;
 import com.bald.uriah.baldphone.activities.pills.PillsActivity;
 import com.bald.uriah.baldphone.utils.S;
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.RequestOptions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * static class of useful methods when using the Apps Database
@@ -55,6 +69,14 @@ public class AppsDatabaseHelper {
 
     public static final String baldComponentNameBeginning = BuildConfig.APPLICATION_ID + "/";
     public static Map<String, Integer> baldComponentNames = new HashMap<>(10);
+    /**
+     * Broadcast locally whenever rows of the Apps Database were added, removed or got their icons
+     */
+    public static final String ACTION_APPS_UPDATED = BuildConfig.APPLICATION_ID + ".ACTION_APPS_UPDATED";
+    private static final int MAX_BOUND_ARGUMENTS = 500;
+    private static final int BATCH_SIZE = 24;
+    private static final int MAX_WORKERS = 4;
+    private static RequestOptions iconRequestOptions;
 
     static {
         if (!BuildConfig.FLAVOR.equals("gPlay"))
@@ -71,8 +93,19 @@ public class AppsDatabaseHelper {
     }
 
     private static List<String> getInstalledAppsFlattenComponentNames(Context context) {
-        final PackageManager pm = context.getPackageManager();
+        final List<String> componentNames = getLauncherActivities(context.getPackageManager(), null);
+        componentNames.addAll(baldComponentNames.keySet());
+        return componentNames;
+    }
+
+    /**
+     * @param packageName the package to query, or null for all packages
+     * @return the flatten component names of the launcher activities, without BaldPhone's own activities
+     */
+    private static List<String> getLauncherActivities(PackageManager pm, @Nullable String packageName) {
         final Intent intent = new Intent(Intent.ACTION_MAIN, null).addCategory(Intent.CATEGORY_LAUNCHER);
+        if (packageName != null)
+            intent.setPackage(packageName);
         final List<ResolveInfo> resolveInfos = pm.queryIntentActivities(intent, 0);
         final List<String> componentNames = new ArrayList<>(resolveInfos.size() + baldComponentNames.size());
 
@@ -86,83 +119,276 @@ public class AppsDatabaseHelper {
                 continue;
             componentNames.add(componentName.flattenToString());
         }
-        componentNames.addAll(baldComponentNames.keySet());
         return componentNames;
     }
 
+    /**
+     * @return a new {@link App} with its label only, or null if the activity is not found
+     */
+    @Nullable
+    private static App createApp(PackageManager packageManager, String componentName) {
+        try {
+            final App app = new App();
+            app.setFlattenComponentName(componentName);
+            final ActivityInfo activityInfo =
+                    packageManager.getActivityInfo(ComponentName.unflattenFromString(componentName), PackageManager.MATCH_DEFAULT_ONLY);
+            app.setLabel(String.valueOf(activityInfo.loadLabel(packageManager)));
+            return app;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "createApp: new app is not found " + componentName, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the {@link AppIconStore} key of the icon of the activity, or null if it is not found
+     */
+    @Nullable
+    private static String createIcon(Context context, PackageManager packageManager, String componentName) {
+        try {
+            final Drawable drawable =
+                    packageManager.getActivityIcon(ComponentName.unflattenFromString(componentName));
+            // icons are never displayed larger than app_icon_size, so there is no point in storing more pixels
+            return AppIconStore.put(context,
+                    S.getBitmapFromDrawable(drawable, context.getResources().getDimensionPixelSize(R.dimen.app_icon_size)));
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "createIcon: new app is not found " + componentName, e);
+            return null;
+        }
+    }
+
     /**
      * Updates Apps Database - should never throw any exception
      */
     public static void updateDB(Context context) {
+        final AppsDatabase appsDatabase = AppsDatabase.getInstance(context);
+        applyDiff(context, appsDatabase,
+                AppsDiff.compute(
+                        getInstalledAppsFlattenComponentNames(context),
+                        appsDatabase.appsDatabaseDao().getAllComponents(),
+                        getLastUpdateTimes(context.getPackageManager())));
+    }
 
+    /**
+     * Applies the changes of a single package to the Apps Database -
+     * adds its new launcher activities, removes the ones which are gone (all of them if the package was removed)
+     * and refreshes the rest if the package was updated.
+     * should never throw any exception
+     */
+    public static void updatePackage(Context context, String packageName) {
+        if (packageName.equals(BuildConfig.APPLICATION_ID))
+            return;
         final AppsDatabase appsDatabase = AppsDatabase.getInstance(context);
-        final int dbAmountBefore = appsDatabase.appsDatabaseDao().getNumberOfRows();
-        final List<String> addList = new ArrayList<>();
-        final List<String> realApps = getInstalledAppsFlattenComponentNames(context);
+        final PackageManager packageManager = context.getPackageManager();
+        Map<String, Long> lastUpdateTimes;
+        try {
+            lastUpdateTimes = Collections.singletonMap(packageName, packageManager.getPackageInfo(packageName, 0).lastUpdateTime);
+        } catch (PackageManager.NameNotFoundException e) {
+            lastUpdateTimes = Collections.emptyMap();
+        }
+        applyDiff(context, appsDatabase,
+                AppsDiff.compute(
+                        getLauncherActivities(packageManager, packageName),
+                        appsDatabase.appsDatabaseDao().getAllOfPackage(packageName),
+                        lastUpdateTimes));
+    }
 
-        int realAppsInDbCount = 0;
+    private static Map<String, Long> getLastUpdateTimes(PackageManager packageManager) {
+        final List<PackageInfo> packageInfos = packageManager.getInstalledPackages(0);
+        final Map<String, Long> lastUpdateTimes = new HashMap<>(packageInfos.size() * 2);
+        for (final PackageInfo packageInfo : packageInfos)
+            lastUpdateTimes.put(packageInfo.packageName, packageInfo.lastUpdateTime);
+        return lastUpdateTimes;
+    }
 
-        for (String componentName : realApps) {
-            if (appsDatabase.appsDatabaseDao().findByFlattenComponentName(componentName) == null) {
-                addList.add(componentName);
-            } else {
-                ++realAppsInDbCount;
-            }
+    /**
+     * Removed apps are deleted first. New and changed apps are then loaded in two passes, each extracted by a small
+     * pool of workers and written in batches of {@link #BATCH_SIZE}: first their labels, so new apps are listed
+     * quickly, then their icons, which are much slower to render and encode.
+     * A row gets the last update time of its package only with its icon, so a row which was not loaded completely
+     * is loaded again by the next reconcile.
+     * {@link #ACTION_APPS_UPDATED} is broadcast after every batch.
+     */
+    private static void applyDiff(Context context, AppsDatabase appsDatabase, AppsDiff appsDiff) {
+        if (appsDiff.isEmpty())
+            return;
+        final AppsDatabaseDao appsDatabaseDao = appsDatabase.appsDatabaseDao();
+        if (appsDiff.removedIds.length > 0) {
+            appsDatabase.runInTransaction(() -> {
+                // SQLite limits the number of bound arguments (999 before 3.32)
+                for (int i = 0; i < appsDiff.removedIds.length; i += MAX_BOUND_ARGUMENTS)
+                    appsDatabaseDao.deleteByIds(Arrays.copyOfRange(appsDiff.removedIds, i, Math.min(i + MAX_BOUND_ARGUMENTS, appsDiff.removedIds.length)));
+                appsDatabase.pinDao().deleteUninstalledApps();
+            });
+            AppIconStore.retainOnly(context, appsDatabaseDao.getAllIconKeys());
+            notifyAppsUpdated(context);
         }
+        if (appsDiff.added.isEmpty() && appsDiff.changed.isEmpty())
+            return;
 
-        if (addList.size() > 0) {
-            final PackageManager packageManager = context.getPackageManager();
-            final App[] appsToAdd = new App[addList.size()];
-            int counter = 0;
-            for (String componentName : addList) {
-                try {
-                    final App app = new App();
-                    appsToAdd[counter++] = app;
-                    app.setFlattenComponentName(componentName);
-                    final ActivityInfo activityInfo =
-                            packageManager.getActivityInfo(ComponentName.unflattenFromString(componentName), PackageManager.MATCH_DEFAULT_ONLY);
-                    app.setLabel(String.valueOf(activityInfo.loadLabel(packageManager)));
-                    final Drawable drawable = activityInfo.loadIcon(packageManager);
-                    if (drawable instanceof BitmapDrawable)
-                        app.setIcon(S.bitmapToByteArray(((BitmapDrawable) drawable).getBitmap()));
-                    else
-                        app.setIcon(S.bitmapToByteArray(S.getBitmapFromDrawable(drawable)));
-
-                } catch (PackageManager.NameNotFoundException e) {
-                    Log.e(TAG, "updateDB: cannot happen! new app is not found", e);
-//                    ACRA.getErrorReporter().handleSilentException(new RuntimeException("cannot happen! new app is not found", e));
+        final PackageManager packageManager = context.getPackageManager();
+        final LabelIndex labelIndex = LabelIndex.forDefaultLocale();
+        final ExecutorService executorService = newWorkers(appsDiff.added.size() + appsDiff.changed.size());
+        try {
+            final List<String> loadedComponentNames = new ArrayList<>(appsDiff.added.size() + appsDiff.changed.size());
+            for (final List<String> batch : batches(appsDiff.added)) {
+                final List<App> apps = loadLabels(executorService, packageManager, labelIndex, batch);
+                for (final App app : apps)
+                    loadedComponentNames.add(app.getFlattenComponentName());
+                if (!apps.isEmpty()) {
+                    appsDatabaseDao.insertAll(apps);
+                    notifyAppsUpdated(context);
                 }
+            }
+            for (final List<String> batch : batches(appsDiff.changed)) {
+                final List<App> apps = loadLabels(executorService, packageManager, labelIndex, batch);
+                appsDatabase.runInTransaction(() -> {
+                    for (final App app : apps) {
+                        appsDatabaseDao.updateLabel(app.getFlattenComponentName(), app.getLabel(), app.getSortKey(), app.getSection());
+                        loadedComponentNames.add(app.getFlattenComponentName());
+                    }
+                });
+                notifyAppsUpdated(context);
+            }
 
+            for (final List<String> batch : batches(loadedComponentNames)) {
+                final List<Callable<String>> tasks = new ArrayList<>(batch.size());
+                for (final String componentName : batch)
+                    tasks.add(() -> createIcon(context, packageManager, componentName));
+                final List<String> iconKeys = invokeAll(executorService, tasks);
+                appsDatabase.runInTransaction(() -> {
+                    for (int i = 0; i < batch.size(); i++)
+                        if (iconKeys.get(i) != null)
+                            appsDatabaseDao.updateIcon(batch.get(i), iconKeys.get(i), appsDiff.getLastUpdateTime(batch.get(i)));
+                });
+                notifyAppsUpdated(context);
             }
-            appsDatabase.appsDatabaseDao().insertAll(appsToAdd);
+        } catch (InterruptedException e) {
+            Log.e(TAG, "applyDiff: interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            executorService.shutdownNow();
         }
+        // the icons the changed apps had before
+        if (!appsDiff.changed.isEmpty())
+            AppIconStore.retainOnly(context, appsDatabaseDao.getAllIconKeys());
+    }
 
-        if (dbAmountBefore > realAppsInDbCount) {
-            final int howMuchToGo = dbAmountBefore - realAppsInDbCount;
-            final int[] idsToDelete = new int[howMuchToGo];
+    /**
+     * Loads the labels of all the apps again, and their sort keys and sections, for the current locale.
+     * Icons do not depend on the locale, so they are left as they are.
+     *
+     * @return the locale the labels were loaded for
+     */
+    static Locale updateLabels(Context context) {
+        final AppsDatabase appsDatabase = AppsDatabase.getInstance(context);
+        final AppsDatabaseDao appsDatabaseDao = appsDatabase.appsDatabaseDao();
+        final PackageManager packageManager = context.getPackageManager();
+        final LabelIndex labelIndex = LabelIndex.forDefaultLocale();
+        final List<AppsDiff.IndexedComponent> indexedComponents = appsDatabaseDao.getAllComponents();
+        final List<String> componentNames = new ArrayList<>(indexedComponents.size());
+        for (final AppsDiff.IndexedComponent indexedComponent : indexedComponents)
+            componentNames.add(indexedComponent.flattenComponentName);
 
-            int idsToDeleteCounter = 0;
-            boolean shouldDelete;
+        final ExecutorService executorService = newWorkers(componentNames.size());
+        try {
+            for (final List<String> batch : batches(componentNames)) {
+                final List<App> apps = loadLabels(executorService, packageManager, labelIndex, batch);
+                appsDatabase.runInTransaction(() -> {
+                    for (final App app : apps)
+                        appsDatabaseDao.updateLabel(app.getFlattenComponentName(), app.getLabel(), app.getSortKey(), app.getSection());
+                });
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "updateLabels: interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            executorService.shutdownNow();
+        }
+        notifyAppsUpdated(context);
+        return labelIndex.locale;
+    }
 
-            for (App app : appsDatabase.appsDatabaseDao().getAll()) {
-                shouldDelete = true;
-                for (String componentName : realApps)
-                    if (app.getFlattenComponentName().equals(componentName)) {
-                        shouldDelete = false;
-                        break;
-                    }
-                if (shouldDelete)
-                    idsToDelete[idsToDeleteCounter++] = app.getId();
+    private static ExecutorService newWorkers(int numberOfTasks) {
+        return Executors.newFixedThreadPool(
+                Math.max(1, Math.min(numberOfTasks, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()))));
+    }
 
+    /**
+     * @return the apps of the batch with their labels, sort keys and sections, without the ones which are not found
+     */
+    private static List<App> loadLabels(ExecutorService executorService, PackageManager packageManager, LabelIndex labelIndex, List<String> batch) throws InterruptedException {
+        final List<Callable<App>> tasks = new ArrayList<>(batch.size());
+        for (final String componentName : batch)
+            tasks.add(() -> createApp(packageManager, componentName));
+        final List<App> apps = new ArrayList<>(batch.size());
+        for (final App app : invokeAll(executorService, tasks))
+            if (app != null) {
+                labelIndex.apply(app);
+                apps.add(app);
+            }
+        return apps;
+    }
+
+    /**
+     * @return the results of the tasks, in their order. a task which threw an exception results in null
+     */
+    private static <T> List<T> invokeAll(ExecutorService executorService, List<Callable<T>> tasks) throws InterruptedException {
+        final List<Future<T>> futures = executorService.invokeAll(tasks);
+        final List<T> results = new ArrayList<>(futures.size());
+        for (final Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Log.e(TAG, "invokeAll: " + e.getCause(), e.getCause());
+                results.add(null);
             }
-            appsDatabase.appsDatabaseDao().deleteByIds(idsToDelete);
         }
+        return results;
+    }
+
+    private static List<List<String>> batches(List<String> list) {
+        final List<List<String>> batches = new ArrayList<>((list.size() + BATCH_SIZE - 1) / BATCH_SIZE);
+        for (int i = 0; i < list.size(); i += BATCH_SIZE)
+            batches.add(list.subList(i, Math.min(i + BATCH_SIZE, list.size())));
+        return batches;
+    }
+
+    private static void notifyAppsUpdated(Context context) {
+        LocalBroadcastManager.getInstance(context).sendBroadcast(new Intent(ACTION_APPS_UPDATED));
     }
 
+    /**
+     * Loads the icon of the app asynchronously, showing a placeholder until it is decoded.
+     * Icons are decoded once at {@link R.dimen#app_icon_size}, so every screen showing the same icon
+     * hits the same entry of Glide's memory cache (an LRU bounded by the device's memory class).
+     */
     public static void loadPic(App app, ImageView imageView) {
-        if (app.getFlattenComponentName().startsWith(baldComponentNameBeginning))
+        if (app.getFlattenComponentName().startsWith(baldComponentNameBeginning)) {
+            // a recycled view may still have a pending load of another app's icon
+            Glide.with(imageView).clear(imageView);
             imageView.setImageResource(AppsDatabaseHelper.baldComponentNames.get(app.getFlattenComponentName()));
-        else
-            Glide.with(imageView).load(S.byteArrayToBitmap(app.getIcon())).into(imageView);
+        } else if (app.getIconKey() != null) {
+            Glide.with(imageView)
+                    .load(AppIconStore.getFile(imageView.getContext(), app.getIconKey()))
+                    .apply(getIconRequestOptions(imageView.getContext()))
+                    .into(imageView);
+        } else {
+            Glide.with(imageView).clear(imageView);
+            imageView.setImageResource(R.drawable.empty);
+        }
+    }
+
+    private static RequestOptions getIconRequestOptions(Context context) {
+        if (iconRequestOptions == null) {
+            final int iconSize = context.getResources().getDimensionPixelSize(R.dimen.app_icon_size);
+            iconRequestOptions = new RequestOptions()
+                    .override(iconSize)
+                    .downsample(DownsampleStrategy.FIT_CENTER)
+                    .placeholder(R.drawable.empty)
+                    .diskCacheStrategy(DiskCacheStrategy.NONE) // the icon is already a local file
+                    .dontAnimate();
+        }
+        return iconRequestOptions;
     }
 }
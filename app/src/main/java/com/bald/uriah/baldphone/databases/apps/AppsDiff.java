@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.databases.apps;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Ignore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The difference between the installed launcher activities and the rows of the Apps Database.
+ * Computed in a single pass over hash sets, and plain java so it can be benchmarked on the JVM.
+ */
+public class AppsDiff {
+    @NonNull
+    public final List<String> added;
+    @NonNull
+    public final int[] removedIds;
+    /**
+     * still installed, but their package was updated since they were indexed
+     */
+    @NonNull
+    public final List<String> changed;
+    @NonNull
+    private final Map<String, Long> lastUpdateTimes;
+
+    private AppsDiff(@NonNull List<String> added, @NonNull int[] removedIds, @NonNull List<String> changed, @NonNull Map<String, Long> lastUpdateTimes) {
+        this.added = added;
+        this.removedIds = removedIds;
+        this.changed = changed;
+        this.lastUpdateTimes = lastUpdateTimes;
+    }
+
+    /**
+     * @param installed flatten component names of the installed launcher activities
+     * @param indexed   the rows currently in the Apps Database
+     */
+    @NonNull
+    public static AppsDiff compute(@NonNull Collection<String> installed, @NonNull List<IndexedComponent> indexed) {
+        return compute(installed, indexed, Collections.emptyMap());
+    }
+
+    /**
+     * @param installed       flatten component names of the installed launcher activities
+     * @param indexed         the rows currently in the Apps Database
+     * @param lastUpdateTimes the last update time of the installed packages, rows of packages which are not in it
+     *                        are never considered changed
+     */
+    @NonNull
+    public static AppsDiff compute(@NonNull Collection<String> installed, @NonNull List<IndexedComponent> indexed, @NonNull Map<String, Long> lastUpdateTimes) {
+        final Set<String> toAdd = new LinkedHashSet<>(installed);
+        final int[] removedIds = new int[indexed.size()];
+        int removedCounter = 0;
+        final List<String> changed = new ArrayList<>();
+        for (int i = 0; i < indexed.size(); i++) {
+            final IndexedComponent indexedComponent = indexed.get(i);
+            if (!toAdd.remove(indexedComponent.flattenComponentName)) {
+                removedIds[removedCounter++] = indexedComponent.id;
+            } else {
+                final Long lastUpdateTime = lastUpdateTimes.get(getPackageName(indexedComponent.flattenComponentName));
+                if (lastUpdateTime != null && lastUpdateTime != indexedComponent.lastUpdateTime)
+                    changed.add(indexedComponent.flattenComponentName);
+            }
+        }
+        return new AppsDiff(new ArrayList<>(toAdd), Arrays.copyOf(removedIds, removedCounter), changed, lastUpdateTimes);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removedIds.length == 0 && changed.isEmpty();
+    }
+
+    /**
+     * @return the last update time of the package of the component, or 0 if it is not known
+     */
+    public long getLastUpdateTime(@NonNull String flattenComponentName) {
+        final Long lastUpdateTime = lastUpdateTimes.get(getPackageName(flattenComponentName));
+        return lastUpdateTime == null ? 0 : lastUpdateTime;
+    }
+
+    @NonNull
+    private static String getPackageName(@NonNull String flattenComponentName) {
+        final int separator = flattenComponentName.indexOf('/');
+        return separator == -1 ? flattenComponentName : flattenComponentName.substring(0, separator);
+    }
+
+    /**
+     * The part of an {@link App} row needed for reconciling, without loading its label and icon.
+     */
+    public static class IndexedComponent {
+        @ColumnInfo(name = "id")
+        public int id;
+
+        @ColumnInfo(name = "flatten_component_name")
+        public String flattenComponentName;
+
+        @ColumnInfo(name = "last_update_time")
+        public long lastUpdateTime;
+
+        public IndexedComponent() {
+        }
+
+        @Ignore
+        public IndexedComponent(int id, String flattenComponentName) {
+            this(id, flattenComponentName, 0);
+        }
+
+        @Ignore
+        public IndexedComponent(int id, String flattenComponentName, long lastUpdateTime) {
+            this.id = id;
+            this.flattenComponentName = flattenComponentName;
+            this.lastUpdateTime = lastUpdateTime;
+        }
+    }
+}
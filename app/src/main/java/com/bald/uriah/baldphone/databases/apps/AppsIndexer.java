@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.databases.apps;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ChangedPackages;
+import android.content.pm.LauncherApps;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.UserHandle;
+import android.provider.Settings;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bald.uriah.baldphone.utils.BPrefs;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the Apps Database in sync with the installed apps.
+ * Changes are applied per package as they happen, via {@link LauncherApps.Callback}.
+ * A full reconcile ({@link AppsDatabaseHelper#updateDB(Context)}) is done only on first launch,
+ * after the database was cleared, or when changes may have been missed while the process was dead.
+ */
+public class AppsIndexer {
+    private static final String TAG = AppsIndexer.class.getSimpleName();
+    private static final Object LOCK = new Object();
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static LauncherApps.Callback callback;
+    private static boolean synced;
+
+    private AppsIndexer() {
+    }
+
+    /**
+     * Starts listening to package changes and makes sure the Apps Database is up to date.
+     * Blocks until it is, so on the first call in a process it should not run on the main thread.
+     */
+    public static void sync(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (LOCK) {
+            registerCallback(appContext);
+            if (synced)
+                return;
+            final SharedPreferences sharedPreferences = BPrefs.get(appContext);
+            final boolean empty = AppsDatabase.getInstance(appContext).appsDatabaseDao().getNumberOfRows() == 0;
+            if (empty || !applyMissedChanges(appContext, sharedPreferences)) {
+                Log.d(TAG, "sync: full reconcile");
+                AppsDatabaseHelper.updateDB(appContext);
+            }
+            if (empty)
+                // all the labels were just loaded for the current locale
+                sharedPreferences.edit().putString(BPrefs.APPS_INDEX_LOCALE_KEY, Locale.getDefault().toString()).apply();
+            else if (!Locale.getDefault().toString().equals(sharedPreferences.getString(BPrefs.APPS_INDEX_LOCALE_KEY, null)))
+                updateLabels(appContext, sharedPreferences);
+            saveSequenceNumber(appContext, sharedPreferences);
+            synced = true;
+        }
+    }
+
+    /**
+     * Same as {@link #sync(Context)}, without blocking the caller.
+     * Listen to {@link AppsDatabaseHelper#ACTION_APPS_UPDATED} for the changes it makes.
+     */
+    public static void syncInBackground(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            try {
+                sync(appContext);
+            } catch (Exception e) {
+                Log.e(TAG, "syncInBackground: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Loads the labels of the apps again, and their sort keys and sections, for the new locale.
+     * If the process dies before it is done, the next {@link #sync(Context)} does it.
+     */
+    public static void onLocaleChanged(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            try {
+                synchronized (LOCK) {
+                    updateLabels(appContext, BPrefs.get(appContext));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "onLocaleChanged: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private static void updateLabels(Context context, SharedPreferences sharedPreferences) {
+        final Locale locale = AppsDatabaseHelper.updateLabels(context);
+        sharedPreferences.edit().putString(BPrefs.APPS_INDEX_LOCALE_KEY, locale.toString()).apply();
+    }
+
+    /**
+     * Forces a full reconcile on the next {@link #sync(Context)}, use after clearing the Apps Database.
+     */
+    public static void invalidate(@NonNull Context context) {
+        synchronized (LOCK) {
+            synced = false;
+            BPrefs.get(context)
+                    .edit()
+                    .remove(BPrefs.APPS_INDEX_BOOT_COUNT_KEY)
+                    .remove(BPrefs.APPS_INDEX_SEQUENCE_NUMBER_KEY)
+                    .remove(BPrefs.APPS_INDEX_LOCALE_KEY)
+                    .apply();
+        }
+    }
+
+    private static void registerCallback(Context context) {
+        if (callback != null)
+            return;
+        final LauncherApps launcherApps = (LauncherApps) context.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+        if (launcherApps == null)
+            return;
+        callback = new PackagesCallback(context);
+        launcherApps.registerCallback(callback, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * Since Oreo the package manager can tell which packages changed since a sequence number,
+     * as long as the device was not rebooted in between.
+     *
+     * @return true if the missed changes were applied, false if a full reconcile is needed
+     */
+    private static boolean applyMissedChanges(Context context, SharedPreferences sharedPreferences) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return false;
+        if (!sharedPreferences.contains(BPrefs.APPS_INDEX_SEQUENCE_NUMBER_KEY)
+                || sharedPreferences.getInt(BPrefs.APPS_INDEX_BOOT_COUNT_KEY, -1) != getBootCount(context))
+            return false;
+        final ChangedPackages changedPackages =
+                context.getPackageManager().getChangedPackages(sharedPreferences.getInt(BPrefs.APPS_INDEX_SEQUENCE_NUMBER_KEY, 0));
+        if (changedPackages != null)
+            for (String packageName : changedPackages.getPackageNames())
+                AppsDatabaseHelper.updatePackage(context, packageName);
+        return true;
+    }
+
+    private static void saveSequenceNumber(Context context, SharedPreferences sharedPreferences) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return;
+        final int bootCount = getBootCount(context);
+        if (bootCount == -1)
+            return;
+        final int sequenceNumber =
+                sharedPreferences.getInt(BPrefs.APPS_INDEX_BOOT_COUNT_KEY, -1) == bootCount ?
+                        sharedPreferences.getInt(BPrefs.APPS_INDEX_SEQUENCE_NUMBER_KEY, 0) : 0;
+        final ChangedPackages changedPackages = context.getPackageManager().getChangedPackages(sequenceNumber);
+        sharedPreferences
+                .edit()
+                .putInt(BPrefs.APPS_INDEX_BOOT_COUNT_KEY, bootCount)
+                .putInt(BPrefs.APPS_INDEX_SEQUENCE_NUMBER_KEY, changedPackages == null ? sequenceNumber : changedPackages.getSequenceNumber())
+                .apply();
+    }
+
+    private static int getBootCount(Context context) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ?
+                Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1) : -1;
+    }
+
+    private static class PackagesCallback extends LauncherApps.Callback {
+        private final Context context;
+
+        PackagesCallback(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void onPackageRemoved(String packageName, UserHandle user) {
+            onPackagesChanged(user, packageName);
+        }
+
+        @Override
+        public void onPackageAdded(String packageName, UserHandle user) {
+            onPackagesChanged(user, packageName);
+        }
+
+        @Override
+        public void onPackageChanged(String packageName, UserHandle user) {
+            onPackagesChanged(user, packageName);
+        }
+
+        @Override
+        public void onPackagesAvailable(String[] packageNames, UserHandle user, boolean replacing) {
+            onPackagesChanged(user, packageNames);
+        }
+
+        @Override
+        public void onPackagesUnavailable(String[] packageNames, UserHandle user, boolean replacing) {
+            onPackagesChanged(user, packageNames);
+        }
+
+        private void onPackagesChanged(UserHandle user, String... packageNames) {
+            if (!Process.myUserHandle().equals(user))
+                return;
+            executor.execute(() -> {
+                try {
+                    synchronized (LOCK) {
+                        for (String packageName : packageNames)
+                            AppsDatabaseHelper.updatePackage(context, packageName);
+                        if (synced)
+                            saveSequenceNumber(context, BPrefs.get(context));
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "onPackagesChanged: " + e.getMessage(), e);
+                }
+            });
+        }
+    }
+}
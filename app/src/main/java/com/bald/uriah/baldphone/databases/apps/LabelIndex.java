@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bald.uriah.baldphone.databases.apps;
+
+import android.icu.text.AlphabeticIndex;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Computes the sort key and the section (the header in the apps list) of app labels, for a single locale.
+ * Sort keys are collation keys, so ordering rows by their bytes orders them like the locale's collator would.
+ * Since Nougat sections are the buckets of ICU's {@link AlphabeticIndex}, before it they are the base letter
+ * of the first character of the label.
+ */
+abstract class LabelIndex {
+    final Locale locale;
+
+    private LabelIndex(Locale locale) {
+        this.locale = locale;
+    }
+
+    @NonNull
+    static LabelIndex forDefaultLocale() {
+        final Locale locale = Locale.getDefault();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            return new IcuLabelIndex(locale);
+        return new LegacyLabelIndex(locale);
+    }
+
+    abstract byte[] sortKey(@NonNull String label);
+
+    abstract String section(@NonNull String label);
+
+    void apply(@NonNull App app) {
+        final String label = app.getLabel() == null ? "" : app.getLabel();
+        app.setSortKey(sortKey(label));
+        app.setSection(section(label));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private static class IcuLabelIndex extends LabelIndex {
+        private final android.icu.text.Collator collator;
+        private final AlphabeticIndex.ImmutableIndex<?> alphabeticIndex;
+
+        IcuLabelIndex(Locale locale) {
+            super(locale);
+            collator = android.icu.text.Collator.getInstance(locale).freeze();
+            // many app names are latin whatever the locale is
+            alphabeticIndex = new AlphabeticIndex<>(locale).addLabels(Locale.ENGLISH).buildImmutableIndex();
+        }
+
+        @Override
+        byte[] sortKey(@NonNull String label) {
+            return collator.getCollationKey(label).toByteArray();
+        }
+
+        @Override
+        String section(@NonNull String label) {
+            return alphabeticIndex.getBucket(alphabeticIndex.getBucketIndex(label)).getLabel();
+        }
+    }
+
+    private static class LegacyLabelIndex extends LabelIndex {
+        private static final String OTHERS = "#";
+        private final Collator collator;
+
+        LegacyLabelIndex(Locale locale) {
+            super(locale);
+            collator = Collator.getInstance(locale);
+        }
+
+        @Override
+        synchronized byte[] sortKey(@NonNull String label) {
+            return collator.getCollationKey(label).toByteArray();
+        }
+
+        @Override
+        String section(@NonNull String label) {
+            if (label.isEmpty())
+                return OTHERS;
+            // decomposing separates accents from their letters, so "É" is in the section of "E"
+            final String base = Normalizer.normalize(label.substring(0, Character.charCount(label.codePointAt(0))), Normalizer.Form.NFD);
+            final int codePoint = base.codePointAt(0);
+            if (!Character.isLetter(codePoint))
+                return OTHERS;
+            return new String(Character.toChars(codePoint)).toUpperCase(locale);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bald.uriah.baldphone.databases.calls;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.provider.CallLog;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caches whether all the missed calls were read, so it is not queried on every notification broadcast.
+ * The call log is queried again only when it changes, debounced by {@link #DEBOUNCE_DELAY},
+ * and only while there are listeners.
+ */
+public class MissedCallsState {
+    private static final String TAG = MissedCallsState.class.getSimpleName();
+    private static final long DEBOUNCE_DELAY = 500;
+    private static final List<OnChangeListener> listeners = new ArrayList<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static Handler backgroundHandler;
+    private static ContentObserver contentObserver;
+    private static ContentResolver contentResolver;
+    private static Runnable query;
+    private static volatile boolean allRead = true;
+
+    private MissedCallsState() {
+    }
+
+    /**
+     * @return the last known state, true if it is not known yet
+     */
+    public static boolean isAllRead() {
+        return allRead;
+    }
+
+    /**
+     * Must be called on the main thread. The listener is called on the main thread, only when the state changes
+     */
+    public static void addListener(@NonNull Context context, @NonNull OnChangeListener listener) {
+        listeners.add(listener);
+        if (contentObserver != null)
+            return;
+        if (backgroundHandler == null) {
+            final HandlerThread handlerThread = new HandlerThread(TAG);
+            handlerThread.start();
+            backgroundHandler = new Handler(handlerThread.getLooper());
+        }
+        contentResolver = context.getApplicationContext().getContentResolver();
+        query = () -> {
+            final boolean newAllRead = CallLogsHelper.isAllReadSafe(contentResolver);
+            if (newAllRead != allRead) {
+                allRead = newAllRead;
+                mainHandler.post(() -> {
+                    for (OnChangeListener onChangeListener : new ArrayList<>(listeners))
+                        onChangeListener.onChange(newAllRead);
+                });
+            }
+        };
+        contentObserver = new ContentObserver(backgroundHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                backgroundHandler.removeCallbacks(query);
+                backgroundHandler.postDelayed(query, DEBOUNCE_DELAY);
+            }
+        };
+        try {
+            contentResolver.registerContentObserver(CallLog.Calls.CONTENT_URI, true, contentObserver);
+        } catch (SecurityException e) {
+            Log.e(TAG, "addListener: " + e.getMessage(), e);
+        }
+        // the call log may have changed while nobody was listening
+        backgroundHandler.post(query);
+    }
+
+    /**
+     * Must be called on the main thread
+     */
+    public static void removeListener(@NonNull OnChangeListener listener) {
+        listeners.remove(listener);
+        if (!listeners.isEmpty() || contentObserver == null)
+            return;
+        contentResolver.unregisterContentObserver(contentObserver);
+        backgroundHandler.removeCallbacks(query);
+        contentObserver = null;
+    }
+
+    public interface OnChangeListener {
+        void onChange(boolean allRead);
+    }
+}
@@ -26,6 +26,8 @@ import com.bald.uriah.baldphone.views.HomeScreenAppView;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.RequestOptions;
 
+import java.util.Objects;
+
 /**
  * Mini contact, contains lookupkey,photo,name and id.
  */
@@ -45,6 +47,16 @@ public class MiniContact implements HomeScreenPinHelper.HomeScreenPinnable, Cons
         this.favorite = favorite;
     }
 
+    @Override
+    public boolean isSameAs(HomeScreenPinHelper.HomeScreenPinnable other) {
+        if (!(other instanceof MiniContact))
+            return false;
+        final MiniContact miniContact = (MiniContact) other;
+        return Objects.equals(lookupKey, miniContact.lookupKey)
+                && Objects.equals(name, miniContact.name)
+                && Objects.equals(photo, miniContact.photo);
+    }
+
     @Override
     public void applyToHomeScreenAppView(HomeScreenAppView homeScreenAppView) {
         if (S.isValidContextForGlide(homeScreenAppView.iv_icon.getContext()))
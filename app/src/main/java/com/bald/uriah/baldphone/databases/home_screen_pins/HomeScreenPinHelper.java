@@ -18,109 +18,185 @@ package com.bald.uriah.baldphone.databases.home_screen_pins;
 
 import android.content.ContentResolver;
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.ContactsContract;
+import android.text.TextUtils;
 
+import com.bald.uriah.baldphone.databases.apps.App;
 import com.bald.uriah.baldphone.databases.apps.AppsDatabase;
 import com.bald.uriah.baldphone.databases.contacts.MiniContact;
 import com.bald.uriah.baldphone.views.HomeScreenAppView;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * The apps and contacts pinned to the home screen, stored in the pins table, see {@link Pin}
+ */
 public class HomeScreenPinHelper {
     public static final String SHARED_PREFS_KEY = PinnedContactPreferences.KEY;
+    /**
+     * where the pinned contacts were stored before the pins table, read only by its migration
+     */
     public static final String SET_KEY = PinnedContactPreferences.SET_KEY;
+    private static final int MAX_BOUND_ARGUMENTS = 500;
+
+    /**
+     * Pinned contacts by their lookup key as of the last query, valid while the pinned lookup keys are
+     * {@link #cachedLookupKeys} and until the contacts provider changes.
+     */
+    private static Map<String, MiniContact> cachedContacts;
+    private static Set<String> cachedLookupKeys;
+    private static ContentObserver contactsObserver;
 
     /**
-     * @param context
-     * @return sorted list of lookup keys
+     * Contacts which no longer exist are unpinned.
+     *
+     * @return the pinned contacts found, by their lookup key
      */
-    private static List<MiniContact> getAllPinnedContacts(Context context) {
-        final Set<String> lookupKeys =
-                context.getSharedPreferences(SHARED_PREFS_KEY, Context.MODE_PRIVATE)
-                        .getStringSet(SET_KEY, null);
-        if (lookupKeys == null)
-            return null;
-        final List<MiniContact> ret = new ArrayList<>(lookupKeys.size());
+    private static synchronized Map<String, MiniContact> getPinnedContacts(Context context, Set<String> lookupKeys) {
+        if (cachedContacts != null && lookupKeys.equals(cachedLookupKeys))
+            return cachedContacts;
+
+        registerContactsObserver(context);
+        final Map<String, MiniContact> ret = new HashMap<>(lookupKeys.size());
         final ContentResolver contentResolver = context.getContentResolver();
-        for (String lookupKey :
-                lookupKeys) {
+        final List<String> lookupKeysList = new ArrayList<>(lookupKeys);
+        // SQLite limits the number of bound arguments (999 before 3.32)
+        for (int i = 0; i < lookupKeysList.size(); i += MAX_BOUND_ARGUMENTS) {
+            final List<String> chunk = lookupKeysList.subList(i, Math.min(i + MAX_BOUND_ARGUMENTS, lookupKeysList.size()));
             try (Cursor cursor = contentResolver.query(
                     ContactsContract.Contacts.CONTENT_URI,
                     MiniContact.PROJECTION,
-                    ContactsContract.Data.LOOKUP_KEY + " = ?",
-                    new String[]{
-                            lookupKey
-                    }, null)) {
-
-                if (cursor.moveToFirst()) {
-                    ret.add(new MiniContact(
+                    ContactsContract.Data.LOOKUP_KEY + " IN (" + TextUtils.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                    chunk.toArray(new String[0]),
+                    null)) {
+                final int lookupKeyIndex = cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY);
+                final int displayNameIndex = cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME);
+                final int photoUriIndex = cursor.getColumnIndex(ContactsContract.Contacts.PHOTO_URI);
+                final int idIndex = cursor.getColumnIndex(ContactsContract.Contacts._ID);
+                final int starredIndex = cursor.getColumnIndex(ContactsContract.Contacts.STARRED);
+                while (cursor.moveToNext()) {
+                    final String lookupKey = cursor.getString(lookupKeyIndex);
+                    // a lookup key may match more than one raw contact of the same contact
+                    if (ret.containsKey(lookupKey))
+                        continue;
+                    ret.put(lookupKey, new MiniContact(
                             lookupKey,
-                            cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME)),
-                            cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.PHOTO_URI)),
-                            cursor.getInt(cursor.getColumnIndex(ContactsContract.Contacts._ID)),
-                            cursor.getInt(cursor.getColumnIndex(ContactsContract.Contacts.STARRED)) == 1
+                            cursor.getString(displayNameIndex),
+                            cursor.getString(photoUriIndex),
+                            cursor.getInt(idIndex),
+                            cursor.getInt(starredIndex) == 1
                     ));
-                } else {
-                    removeContact(context, lookupKey);
                 }
             } catch (Exception e) {
                 throw new AssertionError(e);
             }
         }
-        Collections.sort(ret, (o1, o2) -> o1.name.compareTo(o2.name));
-        return ret;
+        if (ret.size() < lookupKeys.size()) {
+            final Set<String> notFound = new HashSet<>(lookupKeys);
+            notFound.removeAll(ret.keySet());
+            AppsDatabase.getInstance(context).pinDao().deleteAll(Pin.TYPE_CONTACT, notFound);
+        }
+        cachedContacts = Collections.unmodifiableMap(ret);
+        cachedLookupKeys = new HashSet<>(ret.keySet());
+        return cachedContacts;
+    }
+
+    private static void registerContactsObserver(Context context) {
+        if (contactsObserver != null)
+            return;
+        contactsObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                synchronized (HomeScreenPinHelper.class) {
+                    cachedContacts = null;
+                }
+            }
+        };
+        try {
+            context.getApplicationContext().getContentResolver()
+                    .registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, contactsObserver);
+        } catch (SecurityException e) {
+            contactsObserver = null;
+        }
     }
 
     public static void pinContact(Context context, String lookupKey) {
-        SharedPreferences sharedPreferences = context.getSharedPreferences(SHARED_PREFS_KEY, Context.MODE_PRIVATE);
-        final Set<String> befSet = sharedPreferences.getStringSet(SET_KEY, null);
-        final Set<String> newSet;
-        if (befSet == null)
-            newSet = new HashSet<>();
-        else
-            newSet = new HashSet<>(befSet);
-        newSet.add(lookupKey);
-        sharedPreferences.edit().putStringSet(SET_KEY, newSet).apply();
+        AppsDatabase.getInstance(context).pinDao().append(Pin.TYPE_CONTACT, lookupKey);
     }
 
     public static boolean isPinned(Context context, String lookupKey) {
-        final Set<String> set = context.getSharedPreferences(SHARED_PREFS_KEY, Context.MODE_PRIVATE).getStringSet(SET_KEY, null);
-        return set != null && set.contains(lookupKey);
+        return AppsDatabase.getInstance(context).pinDao().isPinned(Pin.TYPE_CONTACT, lookupKey);
     }
 
     public static void removeContact(Context context, String lookupKey) {
-        final SharedPreferences sharedPreferences = context.getSharedPreferences(SHARED_PREFS_KEY, Context.MODE_PRIVATE);
-        final Set<String> befSet = sharedPreferences.getStringSet(SET_KEY, null);
-        final Set<String> newSet;
-        if (befSet == null)
-            newSet = new HashSet<>();
-        else
-            newSet = new HashSet<>(befSet);
-        newSet.remove(lookupKey);
-        sharedPreferences.edit().putStringSet(SET_KEY, newSet).apply();
+        AppsDatabase.getInstance(context).pinDao().delete(Pin.TYPE_CONTACT, lookupKey);
     }
 
+    public static void pinApp(Context context, App app) {
+        AppsDatabase.getInstance(context).pinDao().append(Pin.TYPE_APP, app.getFlattenComponentName());
+        app.setPinned(true);
+    }
+
+    public static void removeApp(Context context, App app) {
+        AppsDatabase.getInstance(context).pinDao().delete(Pin.TYPE_APP, app.getFlattenComponentName());
+        app.setPinned(false);
+    }
+
+    /**
+     * Sets {@link App#isPinned()} of every app of apps
+     */
+    public static void markPinnedApps(Context context, List<App> apps) {
+        final Set<String> pinnedApps = new HashSet<>(AppsDatabase.getInstance(context).pinDao().getKeys(Pin.TYPE_APP));
+        for (App app : apps)
+            app.setPinned(pinnedApps.contains(app.getFlattenComponentName()));
+    }
+
+    /**
+     * @return the pinned apps and contacts, in the order they were pinned
+     */
     public static List<HomeScreenPinnable> getAll(Context context) {
-        final List<HomeScreenPinnable> ret =
-                new ArrayList<>(
-                        AppsDatabase.getInstance(context)
-                                .appsDatabaseDao().getAllPinned()
-                );
-        final List<MiniContact> contactList = getAllPinnedContacts(context);
-        if (contactList != null)
-            ret.addAll(contactList);
-        return ret;
+        final AppsDatabase appsDatabase = AppsDatabase.getInstance(context);
+        final List<Pin> pins = appsDatabase.pinDao().getAll();
+        final Set<String> flattenComponentNames = new HashSet<>();
+        final Set<String> lookupKeys = new HashSet<>();
+        for (Pin pin : pins)
+            (pin.getType() == Pin.TYPE_APP ? flattenComponentNames : lookupKeys).add(pin.getKey());
+
+        final Map<String, App> apps = new HashMap<>(flattenComponentNames.size());
+        if (!flattenComponentNames.isEmpty())
+            for (App app : appsDatabase.appsDatabaseDao().findByFlattenComponentNames(flattenComponentNames))
+                apps.put(app.getFlattenComponentName(), app);
+        final Map<String, MiniContact> contacts =
+                lookupKeys.isEmpty() ? Collections.emptyMap() : getPinnedContacts(context, lookupKeys);
 
+        final List<HomeScreenPinnable> ret = new ArrayList<>(pins.size());
+        for (Pin pin : pins) {
+            // apps which are not indexed yet are not shown until they are
+            final HomeScreenPinnable homeScreenPinnable =
+                    pin.getType() == Pin.TYPE_APP ? apps.get(pin.getKey()) : contacts.get(pin.getKey());
+            if (homeScreenPinnable != null)
+                ret.add(homeScreenPinnable);
+        }
+        return ret;
     }
 
     public interface HomeScreenPinnable {
         void applyToHomeScreenAppView(HomeScreenAppView homeScreenAppView);
+
+        /**
+         * @return true if other would be applied to a {@link HomeScreenAppView} exactly like this one
+         */
+        boolean isSameAs(HomeScreenPinnable other);
     }
 
     public static final class PinnedContactPreferences {
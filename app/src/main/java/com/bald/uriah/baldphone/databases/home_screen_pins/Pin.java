@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.databases.home_screen_pins;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * An app or a contact pinned to the home screen, shown in the order of {@link #position}.
+ * Kept in the apps database, see {@link com.bald.uriah.baldphone.databases.apps.AppsDatabase}
+ */
+@Entity(tableName = "pins", primaryKeys = {"type", "key"}, indices = {@Index("position")})
+public class Pin {
+    public static final int TYPE_APP = 0;
+    public static final int TYPE_CONTACT = 1;
+
+    /**
+     * {@link #TYPE_APP} or {@link #TYPE_CONTACT}
+     */
+    @ColumnInfo(name = "type")
+    private int type;
+
+    /**
+     * flatten component name of an app, lookup key of a contact
+     */
+    @NonNull
+    @ColumnInfo(name = "key")
+    private String key = "";
+
+    @ColumnInfo(name = "position")
+    private int position;
+
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(@NonNull String key) {
+        this.key = key;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.databases.home_screen_pins;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+@Dao
+public interface PinDao {
+    @Query("SELECT * FROM pins ORDER BY position")
+    List<Pin> getAll();
+
+    @Query("SELECT `key` FROM pins WHERE type = :type")
+    List<String> getKeys(int type);
+
+    @Query("SELECT EXISTS(SELECT 1 FROM pins WHERE type = :type AND `key` = :key)")
+    boolean isPinned(int type, String key);
+
+    /**
+     * pins after the last pin, does nothing if already pinned
+     */
+    @Query("INSERT OR IGNORE INTO pins (type, `key`, position) SELECT :type, :key, IFNULL(MAX(position), -1) + 1 FROM pins")
+    void append(int type, String key);
+
+    @Query("DELETE FROM pins WHERE type = :type AND `key` = :key")
+    void delete(int type, String key);
+
+    @Query("DELETE FROM pins WHERE type = :type AND `key` IN (:keys)")
+    void deleteAll(int type, Collection<String> keys);
+
+    @Query("DELETE FROM pins WHERE type = " + Pin.TYPE_APP + " AND NOT EXISTS (SELECT 1 FROM App WHERE flatten_component_name = pins.`key`)")
+    void deleteUninstalledApps();
+}
@@ -74,12 +74,9 @@ public class BaldInputMethodService extends InputMethodService implements View.O
         super.onStartInputView(info, restarting);
         if (baldPrefsUtils == null) {
             baldPrefsUtils = BaldPrefsUtils.newInstance(this);
-        } else {
-            final BaldPrefsUtils tmp = BaldPrefsUtils.newInstance(this);
-            if (!tmp.equals(baldPrefsUtils)) {
-                baldPrefsUtils = tmp;
-                changeLanguage(lastLanguage);
-            }
+        } else if (baldPrefsUtils.hasChangedExceptCustomButtons(this)) {
+            baldPrefsUtils = BaldPrefsUtils.newInstance(this);
+            changeLanguage(lastLanguage);
         }
     }
 
@@ -21,20 +21,30 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import com.bald.uriah.baldphone.utils.CoalescingDispatcher;
+import com.bald.uriah.baldphone.utils.PackageInfoCache;
+
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public class NotificationListenerService extends android.service.notification.NotificationListenerService {
     private static final String TAG = NotificationListenerService.class.getSimpleName();
@@ -49,7 +59,27 @@ public class NotificationListenerService extends android.service.notification.No
     public static final String KEY_EXTRA_KEY = "KEY_EXTRA_KEY";
     //    ACTIONS
     public static final String KEY_EXTRA_NOTIFICATIONS = "KEY_EXTRA_NOTIFICATIONS";
+    /**
+     * the notifications which were posted or updated, sent to the notifications activity after it registered
+     */
+    public static final String KEY_EXTRA_POSTED_NOTIFICATIONS = "KEY_EXTRA_POSTED_NOTIFICATIONS";
+    /**
+     * the keys of the notifications which were removed, sent to the notifications activity after it registered
+     */
+    public static final String KEY_EXTRA_REMOVED_KEYS = "KEY_EXTRA_REMOVED_KEYS";
+    /**
+     * the keys of all the notifications in the order they should be shown, sent with the changes
+     */
+    public static final String KEY_EXTRA_ORDER = "KEY_EXTRA_ORDER";
     public static final String KEY_EXTRA_ACTIVITY = "KEY_EXTRA_ACTIVITY";
+    /**
+     * the packages which have notifications, sent to the home screen when it registers
+     */
+    public static final String KEY_EXTRA_PACKAGES = "packages";
+    /**
+     * the packages which got their first notification or lost their last one, sent to the home screen on changes
+     */
+    public static final String KEY_EXTRA_PACKAGES_ADDED = "packages_added", KEY_EXTRA_PACKAGES_REMOVED = "packages_removed";
     public static final int
             NOTIFICATIONS_NONE = 0,
             NOTIFICATIONS_SOME = 2,
@@ -59,11 +89,52 @@ public class NotificationListenerService extends android.service.notification.No
             ACTIVITY_NONE = -1,
             NOTIFICATIONS_ACTIVITY = 1,
             NOTIFICATIONS_HOME_SCREEN = 2;
+    /**
+     * changes are sent once no notification changed for {@link #COALESCING_WINDOW_MILLIS},
+     * but at most {@link #COALESCING_MAX_LATENCY_MILLIS} after the first of them
+     */
+    private static final long COALESCING_WINDOW_MILLIS = 150, COALESCING_MAX_LATENCY_MILLIS = 500;
     // VARS
     @SupportedActivitys
     private int activity = ACTIVITY_NONE;
-    private PackageManager packageManager;
     private boolean listening = false;
+    /**
+     * given to every bundle, it identifies the version of a notification and its icons.
+     * static because the icons stay cached after the service is recreated
+     */
+    private static long revision;
+    /**
+     * every active notification as it is sent to the notifications activity, in the order the system ranks them,
+     * and the number of active notifications of every package
+     */
+    private final RankedNotifications<Bundle> notifications = new RankedNotifications<>();
+    private final Map<String, Integer> notificationsPerPackage = new HashMap<>();
+    /**
+     * the keys of the notifications which changed since the notifications activity was last updated
+     */
+    private final Set<String> changedKeys = new LinkedHashSet<>();
+    /**
+     * what the home screen was last told
+     */
+    private final Set<String> sentPackages = new HashSet<>();
+    private int sentAmount;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final CoalescingDispatcher dispatcher = new CoalescingDispatcher(
+            SystemClock::uptimeMillis,
+            new CoalescingDispatcher.Scheduler() {
+                @Override
+                public void schedule(Runnable runnable, long delayMillis) {
+                    handler.postDelayed(runnable, delayMillis);
+                }
+
+                @Override
+                public void cancel(Runnable runnable) {
+                    handler.removeCallbacks(runnable);
+                }
+            },
+            COALESCING_WINDOW_MILLIS,
+            COALESCING_MAX_LATENCY_MILLIS,
+            this::sendChangesToActivity);
     // VARS
     private final BroadcastReceiver listener = new BroadcastReceiver() {
         @Override
@@ -72,6 +143,9 @@ public class NotificationListenerService extends android.service.notification.No
             switch (action) {
                 case ACTION_REGISTER_ACTIVITY:
                     activity = intent.getIntExtra(KEY_EXTRA_ACTIVITY, ACTIVITY_NONE);
+                    // the full state is sent instead
+                    dispatcher.cancel();
+                    changedKeys.clear();
                     sendBroadcastToActivity();
                     break;
                 case ACTION_CLEAR:
@@ -84,20 +158,99 @@ public class NotificationListenerService extends android.service.notification.No
     };
 
     @Override
-    public void onNotificationPosted(StatusBarNotification sbn) {
-        sendBroadcastToActivity();
+    public void onNotificationPosted(StatusBarNotification sbn, RankingMap rankingMap) {
+        if (!listening)
+            return;
+        final boolean added = notifications.put(sbn.getKey(), toBundle(sbn), sbn.getPostTime(), ranksOf(rankingMap));
+        if (added)
+            increment(sbn.getPackageName(), 1);
+        onNotificationChanged(sbn.getKey(), added);
     }
 
     @Override
-    public void onNotificationRemoved(StatusBarNotification sbn) {
-        sendBroadcastToActivity();
+    public void onNotificationRemoved(StatusBarNotification sbn, RankingMap rankingMap) {
+        if (notifications.remove(sbn.getKey()) == null)
+            return;
+        notifications.setRanks(ranksOf(rankingMap));
+        increment(sbn.getPackageName(), -1);
+        onNotificationChanged(sbn.getKey(), true);
+    }
+
+    @Override
+    public void onNotificationRankingUpdate(RankingMap rankingMap) {
+        if (!listening)
+            return;
+        notifications.setRanks(ranksOf(rankingMap));
+        // the changes carry the new order
+        if (activity == NOTIFICATIONS_ACTIVITY)
+            dispatcher.dispatch();
+    }
+
+    private static RankedNotifications.Ranks ranksOf(@Nullable RankingMap rankingMap) {
+        if (rankingMap == null)
+            return key -> -1;
+        final Ranking ranking = new Ranking();
+        return key -> rankingMap.getRanking(key, ranking) ? ranking.getRank() : -1;
+    }
+
+    /**
+     * @param countChanged whether the number of notifications changed, the home screen does not show anything else
+     */
+    private void onNotificationChanged(String key, boolean countChanged) {
+        switch (activity) {
+            case NOTIFICATIONS_ACTIVITY:
+                changedKeys.add(key);
+                dispatcher.dispatch();
+                break;
+            case NOTIFICATIONS_HOME_SCREEN:
+                if (countChanged)
+                    dispatcher.dispatch();
+                break;
+        }
+    }
+
+    private void increment(String packageName, int by) {
+        final Integer count = notificationsPerPackage.get(packageName);
+        final int newCount = (count == null ? 0 : count) + by;
+        if (newCount <= 0)
+            notificationsPerPackage.remove(packageName);
+        else
+            notificationsPerPackage.put(packageName, newCount);
+    }
+
+    private void sendChangesToActivity() {
+        if (!listening)
+            return;
+        switch (activity) {
+            case NOTIFICATIONS_ACTIVITY:
+                sendChangesToNotificationsActivity();
+                break;
+            case NOTIFICATIONS_HOME_SCREEN:
+                sendBadgesChangeToHomeScreenActivity();
+                break;
+        }
+    }
+
+    private void loadActiveNotifications() {
+        notifications.clear();
+        notificationsPerPackage.clear();
+        try {
+            final RankedNotifications.Ranks ranks = ranksOf(getCurrentRanking());
+            for (final StatusBarNotification statusBarNotification : getActiveNotifications()) {
+                notifications.put(statusBarNotification.getKey(), toBundle(statusBarNotification), statusBarNotification.getPostTime(), ranks);
+                increment(statusBarNotification.getPackageName(), 1);
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, e.getMessage());
+            e.printStackTrace();
+        }
     }
 
     @Override
     public void onListenerConnected() {
         super.onListenerConnected();
         listening = true;
-        packageManager = getPackageManager();
+        loadActiveNotifications();
         LocalBroadcastManager.getInstance(this).registerReceiver(listener,
                 new IntentFilter(ACTION_REGISTER_ACTIVITY));
         LocalBroadcastManager.getInstance(this).registerReceiver(listener,
@@ -123,64 +276,95 @@ public class NotificationListenerService extends android.service.notification.No
         }
     }
 
+    /**
+     * Sends all the notifications, the notifications activity gets only the changes of them until it registers again
+     */
     private void sendBroadcastToNotificationsActivity() {
-        try {
-            final StatusBarNotification[] statusBarNotifications = getActiveNotifications();
-            final Bundle[] bundlesToSend = new Bundle[statusBarNotifications.length];
-
-            for (int i = 0, statusBarNotificationsLength = statusBarNotifications.length; i < statusBarNotificationsLength; i++) {
-                final StatusBarNotification statusBarNotification = statusBarNotifications[i];
-                final Notification notification = statusBarNotification.getNotification();
-                final Bundle bundle = bundlesToSend[i] = new Bundle();
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    bundle.putParcelable("small_icon", notification.getSmallIcon());
-                    bundle.putParcelable("large_icon", notification.getLargeIcon());
-                } else {
-                    bundle.putInt("small_icon", notification.icon);
-                    bundle.putParcelable("large_icon", notification.largeIcon);
-                }
-                bundle.putCharSequence("title", notification.extras.getCharSequence(Notification.EXTRA_TITLE));
-                bundle.putCharSequence("text", notification.extras.getCharSequence(Notification.EXTRA_TEXT));
-                bundle.putLong("time_stamp", notification.when);
-                final CharSequence packageName = statusBarNotification.getPackageName();
-                bundle.putCharSequence("packageName", packageName);
-                ApplicationInfo ai = null;
-                try {
-                    ai = packageManager.getApplicationInfo(String.valueOf(packageName), 0);
-                } catch (final PackageManager.NameNotFoundException ignore) {
-                }
-                bundle.putCharSequence("app_name", (ai != null ? packageManager.getApplicationLabel(ai) : "(unknown)"));
-                bundle.putParcelable("clear_intent", notification.deleteIntent);
-                bundle.putParcelable("content_intent", notification.contentIntent);
-                bundle.putBoolean("clearable", (notification.flags & Notification.FLAG_NO_CLEAR) == 0);
-                bundle.putBoolean("summery", (notification.flags & Notification.FLAG_GROUP_SUMMARY) == Notification.FLAG_GROUP_SUMMARY);
-                bundle.putString(KEY_EXTRA_KEY, statusBarNotification.getKey());
-            }
-            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(NOTIFICATIONS_ACTIVITY_BROADCAST).putExtra(KEY_EXTRA_NOTIFICATIONS, bundlesToSend));
-        } catch (SecurityException e) {
-            Log.e(TAG, e.getMessage());
-            e.printStackTrace();
+        LocalBroadcastManager.getInstance(this)
+                .sendBroadcast(new Intent(NOTIFICATIONS_ACTIVITY_BROADCAST)
+                        .putExtra(KEY_EXTRA_NOTIFICATIONS, notifications.values().toArray(new Bundle[0])));
+    }
+
+    private void sendChangesToNotificationsActivity() {
+        final ArrayList<Bundle> posted = new ArrayList<>();
+        final ArrayList<String> removed = new ArrayList<>();
+        for (final String key : changedKeys) {
+            final Bundle bundle = notifications.get(key);
+            if (bundle == null)
+                removed.add(key);
+            else
+                posted.add(bundle);
         }
+        changedKeys.clear();
+        LocalBroadcastManager.getInstance(this)
+                .sendBroadcast(new Intent(NOTIFICATIONS_ACTIVITY_BROADCAST)
+                        .putExtra(KEY_EXTRA_POSTED_NOTIFICATIONS, posted.toArray(new Bundle[0]))
+                        .putExtra(KEY_EXTRA_REMOVED_KEYS, removed.toArray(new String[0]))
+                        .putExtra(KEY_EXTRA_ORDER, notifications.keys().toArray(new String[0])));
     }
 
-    private void sendBroadcastToHomeScreenActivity() {
-        try {
-            final StatusBarNotification[] statusBarNotifications = getActiveNotifications();
-            final ArrayList<String> packages = new ArrayList<>(statusBarNotifications.length);
-            for (final StatusBarNotification statusBarNotification : statusBarNotifications) {
-                packages.add(statusBarNotification.getPackageName());
+    private Bundle toBundle(StatusBarNotification statusBarNotification) {
+        final Notification notification = statusBarNotification.getNotification();
+        final Bundle bundle = new Bundle();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            bundle.putParcelable("small_icon", notification.getSmallIcon());
+            bundle.putParcelable("large_icon", notification.getLargeIcon());
+        } else {
+            bundle.putInt("small_icon", notification.icon);
+            bundle.putParcelable("large_icon", notification.largeIcon);
+        }
+        bundle.putCharSequence("title", notification.extras.getCharSequence(Notification.EXTRA_TITLE));
+        bundle.putCharSequence("text", notification.extras.getCharSequence(Notification.EXTRA_TEXT));
+        bundle.putLong("time_stamp", notification.when);
+        final String packageName = statusBarNotification.getPackageName();
+        bundle.putCharSequence("packageName", packageName);
+        final CharSequence appName = PackageInfoCache.getLabel(this, packageName);
+        bundle.putCharSequence("app_name", appName != null ? appName : "(unknown)");
+        bundle.putParcelable("clear_intent", notification.deleteIntent);
+        bundle.putParcelable("content_intent", notification.contentIntent);
+        bundle.putBoolean("clearable", (notification.flags & Notification.FLAG_NO_CLEAR) == 0);
+        bundle.putBoolean("summery", (notification.flags & Notification.FLAG_GROUP_SUMMARY) == Notification.FLAG_GROUP_SUMMARY);
+        bundle.putString(KEY_EXTRA_KEY, statusBarNotification.getKey());
+        bundle.putLong("revision", ++revision);
+        return bundle;
+    }
 
-            }
-            final Intent intent = new Intent(HOME_SCREEN_ACTIVITY_BROADCAST)
-                    .putExtra("amount", statusBarNotifications.length)
-                    .putStringArrayListExtra("packages", packages);
+    /**
+     * Sends the full state, the home screen gets only the changes of it until it registers again
+     */
+    private void sendBroadcastToHomeScreenActivity() {
+        sentPackages.clear();
+        sentPackages.addAll(notificationsPerPackage.keySet());
+        sentAmount = notifications.size();
+        final Intent intent = new Intent(HOME_SCREEN_ACTIVITY_BROADCAST)
+                .putExtra("amount", sentAmount)
+                .putStringArrayListExtra(KEY_EXTRA_PACKAGES, new ArrayList<>(sentPackages));
+        LocalBroadcastManager.getInstance(this)
+                .sendBroadcast(intent);
+    }
 
-            LocalBroadcastManager.getInstance(this)
-                    .sendBroadcast(intent);
-        } catch (SecurityException e) {
-            Log.e(TAG, e.getMessage());
-            e.printStackTrace();
-        }
+    /**
+     * Sends the packages which got their first notification or lost their last one since the home screen was last updated
+     */
+    private void sendBadgesChangeToHomeScreenActivity() {
+        final ArrayList<String> added = new ArrayList<>(), removed = new ArrayList<>();
+        for (final String packageName : notificationsPerPackage.keySet())
+            if (!sentPackages.contains(packageName))
+                added.add(packageName);
+        for (final String packageName : sentPackages)
+            if (!notificationsPerPackage.containsKey(packageName))
+                removed.add(packageName);
+        if (added.isEmpty() && removed.isEmpty() && sentAmount == notifications.size())
+            return;
+        sentPackages.addAll(added);
+        sentPackages.removeAll(removed);
+        sentAmount = notifications.size();
+        final Intent intent = new Intent(HOME_SCREEN_ACTIVITY_BROADCAST)
+                .putExtra("amount", sentAmount)
+                .putStringArrayListExtra(KEY_EXTRA_PACKAGES_ADDED, added)
+                .putStringArrayListExtra(KEY_EXTRA_PACKAGES_REMOVED, removed);
+        LocalBroadcastManager.getInstance(this)
+                .sendBroadcast(intent);
     }
 
     @IntDef({ACTIVITY_NONE, NOTIFICATIONS_ACTIVITY, NOTIFICATIONS_HOME_SCREEN})
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The active notifications by their key, kept in the order the system ranks them.
+ * Notifications without a rank come after the ranked ones, the most recently posted first.
+ *
+ * @param <V> what is kept for every notification
+ */
+public class RankedNotifications<V> {
+    private final Map<String, Entry<V>> entries = new HashMap<>();
+    private final List<Entry<V>> ordered = new ArrayList<>();
+    private final Comparator<Entry<V>> comparator = (o1, o2) -> {
+        if (o1.rank >= 0 || o2.rank >= 0) {
+            if (o1.rank < 0)
+                return 1;
+            if (o2.rank < 0)
+                return -1;
+            if (o1.rank != o2.rank)
+                return Integer.compare(o1.rank, o2.rank);
+        }
+        if (o1.postTime != o2.postTime)
+            return Long.compare(o2.postTime, o1.postTime);
+        return o1.key.compareTo(o2.key);
+    };
+
+    /**
+     * @param ranks the ranks after the notification was posted
+     * @return true if the notification was not here before
+     */
+    public boolean put(String key, V value, long postTime, Ranks ranks) {
+        final Entry<V> old = entries.put(key, new Entry<>(key, value, postTime));
+        if (old != null)
+            ordered.remove(old);
+        ordered.add(entries.get(key));
+        setRanks(ranks);
+        return old == null;
+    }
+
+    /**
+     * @return the value of the removed notification, or null if it was not here
+     */
+    public V remove(String key) {
+        final Entry<V> old = entries.remove(key);
+        if (old == null)
+            return null;
+        ordered.remove(old);
+        return old.value;
+    }
+
+    public V get(String key) {
+        final Entry<V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Orders the notifications by the new ranks. The order is usually unchanged, which makes sorting it cheap
+     */
+    public void setRanks(Ranks ranks) {
+        for (Entry<V> entry : ordered)
+            entry.rank = ranks.getRank(entry.key);
+        Collections.sort(ordered, comparator);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        ordered.clear();
+    }
+
+    public List<V> values() {
+        final List<V> values = new ArrayList<>(ordered.size());
+        for (Entry<V> entry : ordered)
+            values.add(entry.value);
+        return values;
+    }
+
+    public List<String> keys() {
+        final List<String> keys = new ArrayList<>(ordered.size());
+        for (Entry<V> entry : ordered)
+            keys.add(entry.key);
+        return keys;
+    }
+
+    public interface Ranks {
+        /**
+         * @return the rank of the notification, lower first, or a negative number if it has none
+         */
+        int getRank(String key);
+    }
+
+    private static class Entry<V> {
+        final String key;
+        final V value;
+        final long postTime;
+        int rank = -1;
+
+        Entry(String key, V value, long postTime) {
+            this.key = key;
+            this.value = value;
+            this.postTime = postTime;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.utils;
+
+import android.content.Intent;
+import android.os.BatteryManager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The part of {@value Intent#ACTION_BATTERY_CHANGED} which is shown.
+ * The broadcast is also sent for voltage and temperature changes, comparing states skips those.
+ */
+public final class BatteryState {
+    /**
+     * the rounded percentage, -1 if unknown
+     */
+    public final int level;
+    public final boolean charging;
+
+    private BatteryState(int level, boolean charging) {
+        this.level = level;
+        this.charging = charging;
+    }
+
+    @NonNull
+    public static BatteryState from(@NonNull Intent intent) {
+        final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        final int chargePlug = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+        return new BatteryState(
+                level < 0 || scale <= 0 ? -1 : Math.round(level / (float) scale * 100),
+                chargePlug == BatteryManager.BATTERY_PLUGGED_AC || chargePlug == BatteryManager.BATTERY_PLUGGED_WIRELESS || chargePlug == BatteryManager.BATTERY_PLUGGED_USB);
+    }
+
+    /**
+     * @return true if the battery is known to be below {@link D#LOW_BATTERY_LEVEL} and not charging
+     */
+    public boolean isLow() {
+        return isLevelKnown() && level < D.LOW_BATTERY_LEVEL && !charging;
+    }
+
+    public boolean isLevelKnown() {
+        return level >= 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final BatteryState that = (BatteryState) o;
+        return level == that.level && charging == that.charging;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * level + (charging ? 1 : 0);
+    }
+}
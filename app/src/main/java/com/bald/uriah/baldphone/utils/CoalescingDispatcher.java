@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.utils;
+
+/**
+ * Merges bursts of events into a single delivery.
+ * A delivery happens once no event was dispatched for {@link #windowMillis},
+ * but never later than {@link #maxLatencyMillis} after the first event it merges.
+ * Not thread safe, the clock, the scheduler and the target are expected to run on the same thread.
+ */
+public class CoalescingDispatcher {
+    private final Clock clock;
+    private final Scheduler scheduler;
+    private final long windowMillis, maxLatencyMillis;
+    private final Runnable target;
+    private final Runnable deliver = this::flush;
+    private boolean pending;
+    private long firstEventTime;
+
+    /**
+     * @param target called once for every merged burst of events
+     */
+    public CoalescingDispatcher(Clock clock, Scheduler scheduler, long windowMillis, long maxLatencyMillis, Runnable target) {
+        if (windowMillis < 0 || maxLatencyMillis < windowMillis)
+            throw new IllegalArgumentException("windowMillis must be between 0 and maxLatencyMillis");
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.target = target;
+    }
+
+    /**
+     * Schedules a delivery, merging it with the one which is pending if there is any
+     */
+    public void dispatch() {
+        final long now = clock.uptimeMillis();
+        if (pending)
+            scheduler.cancel(deliver);
+        else {
+            pending = true;
+            firstEventTime = now;
+        }
+        final long deliveryTime = Math.min(now + windowMillis, firstEventTime + maxLatencyMillis);
+        scheduler.schedule(deliver, Math.max(0, deliveryTime - now));
+    }
+
+    /**
+     * Delivers the pending events now, if there are any
+     */
+    public void flush() {
+        if (!pending)
+            return;
+        cancel();
+        target.run();
+    }
+
+    /**
+     * Drops the pending events, if there are any
+     */
+    public void cancel() {
+        if (!pending)
+            return;
+        pending = false;
+        scheduler.cancel(deliver);
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    public interface Clock {
+        long uptimeMillis();
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable runnable, long delayMillis);
+
+        void cancel(Runnable runnable);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.utils;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the icons of notifications in the background, downsampled to the size of their view.
+ * Icons usually come from other apps, and large icons are often full resolution photos,
+ * so loading them while binding would block the UI thread, and decoding them at full size would waste memory.
+ * The downsampled bitmaps are cached by the key each caller gives, which should identify the notification and its icon.
+ */
+public class NotificationIconLoader {
+    private static final String TAG = NotificationIconLoader.class.getSimpleName();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final LruCache<String, Bitmap> cache = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 32)) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    private NotificationIconLoader() {
+    }
+
+    /**
+     * Must be called on the main thread. Shows the icon in the view now if it is cached, otherwise clears the view
+     * and shows the icon once it is loaded, unless the view was given another icon meanwhile.
+     *
+     * @param size     the size of the view in pixels, the icon is loaded no larger than it
+     * @param onLoaded called on the main thread with whether the icon could be loaded, may be called before this returns
+     */
+    public static void load(@NonNull ImageView imageView, @NonNull String key, int size, @Nullable @ColorInt Integer tint,
+                            @NonNull Source source, @Nullable OnLoadedListener onLoaded) {
+        if (size <= 0)
+            throw new IllegalArgumentException("size must be positive, was " + size);
+        final String cacheKey = key + "@" + size;
+        imageView.setTag(cacheKey);
+        final Bitmap cached = cache.get(cacheKey);
+        if (cached != null) {
+            show(imageView, cached, tint, onLoaded);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        final Context context = imageView.getContext().getApplicationContext();
+        executor.execute(() -> {
+            Bitmap bitmap = null;
+            try {
+                bitmap = source.load(context, size);
+                if (bitmap != null) {
+                    bitmap = scaleToFit(bitmap, size);
+                    cache.put(cacheKey, bitmap);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "load: " + e.getMessage(), e);
+            }
+            final Bitmap loaded = bitmap;
+            mainHandler.post(() -> {
+                // the view was recycled for another icon
+                if (!cacheKey.equals(imageView.getTag()))
+                    return;
+                show(imageView, loaded, tint, onLoaded);
+            });
+        });
+    }
+
+    /**
+     * Must be called on the main thread. Clears the view, dropping the icon it may be loading
+     */
+    public static void clear(@NonNull ImageView imageView) {
+        imageView.setTag(null);
+        imageView.setImageDrawable(null);
+    }
+
+    private static void show(ImageView imageView, @Nullable Bitmap bitmap, @Nullable Integer tint, @Nullable OnLoadedListener onLoaded) {
+        if (bitmap != null) {
+            final Drawable drawable = new BitmapDrawable(imageView.getResources(), bitmap);
+            if (tint != null)
+                drawable.setTint(tint);
+            imageView.setImageDrawable(drawable);
+        }
+        if (onLoaded != null)
+            onLoaded.onLoaded(bitmap != null);
+    }
+
+    /**
+     * Decodes the icon no larger than needed for size. Bitmap icons are already in memory and are only scaled,
+     * resource and uri icons are decoded at the target size on P and above; below P their type is hidden,
+     * so they are loaded as drawables and drawn at size.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    @Nullable
+    public static Bitmap decodeIcon(@NonNull Context context, @NonNull Icon icon, int size) throws Exception {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            try {
+                switch (icon.getType()) {
+                    case Icon.TYPE_RESOURCE:
+                        final Bitmap bitmap = decodeResource(
+                                context.getPackageManager().getResourcesForApplication(icon.getResPackage()),
+                                icon.getResId(), size);
+                        if (bitmap != null)
+                            return bitmap;
+                        break; // not a bitmap resource, vectors are cheap to draw at size
+                    case Icon.TYPE_URI:
+                        return decode(ImageDecoder.createSource(context.getContentResolver(), icon.getUri()), size);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "decodeIcon: " + e.getMessage(), e);
+            }
+        }
+        final Drawable drawable = icon.loadDrawable(context);
+        return drawable == null ? null : S.getBitmapFromDrawable(drawable, size);
+    }
+
+    /**
+     * Decodes a bitmap resource subsampled to about size, returns null if it is not a bitmap
+     */
+    @Nullable
+    public static Bitmap decodeResource(@NonNull Resources resources, int resId, int size) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, size);
+        return BitmapFactory.decodeResource(resources, resId, options);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.P)
+    private static Bitmap decode(ImageDecoder.Source source, int size) throws Exception {
+        return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+            final int width = info.getSize().getWidth(), height = info.getSize().getHeight();
+            if (width > size || height > size) {
+                final float scale = (float) size / Math.max(width, height);
+                decoder.setTargetSize(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+            }
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+        });
+    }
+
+    /**
+     * The largest power of 2 that keeps both sides at least size, as {@link BitmapFactory.Options#inSampleSize} wants
+     */
+    private static int sampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /**
+     * Scales the bitmap down so no side is larger than size, returns it as is if it already fits
+     */
+    @NonNull
+    public static Bitmap scaleToFit(@NonNull Bitmap bitmap, int size) {
+        final int width = bitmap.getWidth(), height = bitmap.getHeight();
+        if (width <= size && height <= size)
+            return bitmap;
+        final float scale = (float) size / Math.max(width, height);
+        return Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+    }
+
+    public interface Source {
+        /**
+         * Called on a background thread. Should not decode the icon much larger than size,
+         * the loader scales the result down to size.
+         */
+        @Nullable
+        Bitmap load(Context context, int size) throws Exception;
+    }
+
+    public interface OnLoadedListener {
+        void onLoaded(boolean loaded);
+    }
+}
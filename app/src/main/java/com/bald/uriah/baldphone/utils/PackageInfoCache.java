@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A process wide cache of the labels and notification icons of packages, used by the notifications service and
+ * the notifications screen so they do not query the package manager for every notification.
+ * A package is dropped when it is replaced, changed or removed, and everything is dropped when the locale changes.
+ */
+public class PackageInfoCache {
+    private static final String TAG = PackageInfoCache.class.getSimpleName();
+    private static final int MAX_PACKAGES = 32;
+    private static final LruCache<String, Entry> cache = new LruCache<>(MAX_PACKAGES);
+    private static BroadcastReceiver invalidator;
+
+    private PackageInfoCache() {
+    }
+
+    /**
+     * @return the label of the package, or null if it is not installed
+     */
+    @Nullable
+    public static synchronized CharSequence getLabel(@NonNull Context context, @NonNull String packageName) {
+        final Entry entry = getEntry(context, packageName);
+        return entry == null ? null : entry.label;
+    }
+
+    /**
+     * @param resId a drawable of the package, as given by notifications before {@link android.os.Build.VERSION_CODES#M}
+     * @return a new tinted copy of the drawable, or null if it cannot be loaded
+     */
+    @Nullable
+    public static synchronized Drawable getSmallIcon(@NonNull Context context, @NonNull String packageName, @DrawableRes int resId, @ColorInt int tint) {
+        final Entry entry = getEntry(context, packageName);
+        if (entry == null)
+            return null;
+        Drawable.ConstantState constantState = entry.smallIcons.get(resId);
+        if (constantState == null) {
+            try {
+                final Drawable drawable = context.getPackageManager().getResourcesForApplication(packageName).getDrawable(resId, null);
+                constantState = drawable.getConstantState();
+                if (constantState == null) {
+                    drawable.setTint(tint);
+                    return drawable;
+                }
+                entry.smallIcons.put(resId, constantState);
+            } catch (Exception e) {
+                Log.e(TAG, "getSmallIcon: " + e.getMessage(), e);
+                return null;
+            }
+        }
+        final Drawable drawable = constantState.newDrawable().mutate();
+        drawable.setTint(tint);
+        return drawable;
+    }
+
+    @Nullable
+    private static Entry getEntry(Context context, String packageName) {
+        registerInvalidator(context);
+        Entry entry = cache.get(packageName);
+        if (entry == null) {
+            final PackageManager packageManager = context.getPackageManager();
+            final ApplicationInfo applicationInfo;
+            try {
+                applicationInfo = packageManager.getApplicationInfo(packageName, 0);
+            } catch (PackageManager.NameNotFoundException e) {
+                return null;
+            }
+            entry = new Entry(packageManager.getApplicationLabel(applicationInfo));
+            cache.put(packageName, entry);
+        }
+        return entry;
+    }
+
+    private static void registerInvalidator(Context context) {
+        if (invalidator != null)
+            return;
+        invalidator = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final Uri data = intent.getData();
+                synchronized (PackageInfoCache.class) {
+                    if (data == null)
+                        cache.evictAll();
+                    else
+                        cache.remove(data.getSchemeSpecificPart());
+                }
+            }
+        };
+        final Context appContext = context.getApplicationContext();
+        final IntentFilter packagesFilter = new IntentFilter();
+        packagesFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packagesFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packagesFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packagesFilter.addDataScheme("package");
+        appContext.registerReceiver(invalidator, packagesFilter);
+        appContext.registerReceiver(invalidator, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+    }
+
+    private static class Entry {
+        final CharSequence label;
+        /**
+         * the notification icons of the package which were loaded, by their resource id
+         */
+        final SparseArray<Drawable.ConstantState> smallIcons = new SparseArray<>();
+
+        Entry(CharSequence label) {
+            this.label = label;
+        }
+    }
+}
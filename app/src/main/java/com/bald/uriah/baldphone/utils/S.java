@@ -29,10 +29,12 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
+import android.provider.Telephony;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
@@ -60,6 +62,7 @@ import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.activities.BaldActivity;
 import com.bald.uriah.baldphone.activities.contacts.ShareActivity;
 import com.bald.uriah.baldphone.content_providers.BaldFileProvider;
+import com.bald.uriah.baldphone.databases.apps.AppUsageTracker;
 
 import org.joda.time.DateTime;
 
@@ -81,6 +84,8 @@ public class S {
     public static final String BALD_IMPORTANT_MESSAGE = "Bald Important Message";
     private static final float DIM_AMOUNT = 0.5f;
     private static final String EMPTY = "";
+    private static String defaultSmsPackage;
+    private static boolean defaultSmsPackageCached;
 
     public static void logImportant(@Nullable CharSequence charSequence) {
         Log.e(BALD_IMPORTANT_MESSAGE, String.valueOf(charSequence));
@@ -137,6 +142,26 @@ public class S {
         throw new RuntimeException(baldDay + " is not defined in a specific baldday int");
     }
 
+    /**
+     * {@link Telephony.Sms#getDefaultSmsPackage(Context)} is an IPC, so it is cached until {@link #invalidateDefaultSmsPackage()}
+     */
+    @Nullable
+    public static String getDefaultSmsPackage(@NonNull Context context) {
+        if (!defaultSmsPackageCached) {
+            defaultSmsPackage = Telephony.Sms.getDefaultSmsPackage(context);
+            defaultSmsPackageCached = true;
+        }
+        return defaultSmsPackage;
+    }
+
+    /**
+     * {@link Telephony.Sms.Intents#ACTION_DEFAULT_SMS_PACKAGE_CHANGED} is sent only to the old and new default apps,
+     * so this should also be called whenever the user may have come back from changing it.
+     */
+    public static void invalidateDefaultSmsPackage() {
+        defaultSmsPackageCached = false;
+    }
+
     public static boolean isPackageInstalled(@NonNull Context context, @NonNull String packageName) {
         final PackageManager packageManager = context.getPackageManager();
         final Intent intent = packageManager.getLaunchIntentForPackage(packageName);
@@ -153,8 +178,12 @@ public class S {
 
     // convert from bitmap to byte array
     public static byte[] bitmapToByteArray(@NonNull Bitmap bitmap) {
+        return bitmapToByteArray(bitmap, Bitmap.CompressFormat.PNG);
+    }
+
+    public static byte[] bitmapToByteArray(@NonNull Bitmap bitmap, @NonNull Bitmap.CompressFormat format) {
         final ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 0, stream);
+        bitmap.compress(format, 100, stream); // the quality is ignored by lossless formats
         return stream.toByteArray();
     }
 
@@ -184,6 +213,32 @@ public class S {
         return bmp;
     }
 
+    /**
+     * Like {@link #getBitmapFromDrawable(Drawable)}, but never larger than maxSize on either side -
+     * adaptive and vector icons may have huge intrinsic sizes on high density screens.
+     */
+    @NonNull
+    public static Bitmap getBitmapFromDrawable(@NonNull Drawable drawable, int maxSize) {
+        int width = drawable.getIntrinsicWidth(), height = drawable.getIntrinsicHeight();
+        if (width <= 0 || height <= 0) {
+            width = height = maxSize;
+        } else if (width > maxSize || height > maxSize) {
+            final float scale = (float) maxSize / Math.max(width, height);
+            width = Math.max(1, Math.round(width * scale));
+            height = Math.max(1, Math.round(height * scale));
+        }
+        if (drawable instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height)
+                return bitmap;
+        }
+        final Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bmp);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(canvas);
+        return bmp;
+    }
+
     public static String stringTimeFromLong(@NonNull Context context, long timeStamp, boolean withHoursAndMinutes) {
         final DateTime now = DateTime.now(); //immutable
         //time will be before now. so this is checking if event occurred today
@@ -271,6 +326,7 @@ public class S {
 
     public static void startComponentName(final Context context, final ComponentName componentName) {
         context.startActivity(Intent.makeRestartActivityTask(componentName));
+        AppUsageTracker.recordLaunch(context, componentName);
     }
 
     public static void applyDim(@NonNull ViewGroup parent) {
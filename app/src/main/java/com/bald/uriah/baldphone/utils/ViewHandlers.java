@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bald.uriah.baldphone.R;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Caches the apps which open {@link #BROWSER_URI} and {@link #MAPS_URI}, with their labels and scaled icons,
+ * so the home screen does not query the package manager while it is created.
+ * They are resolved in the background once, and again when a package is added, removed or changed.
+ */
+public class ViewHandlers {
+    private static final String TAG = ViewHandlers.class.getSimpleName();
+    public static final Uri BROWSER_URI = Uri.parse("http://www.google.com");
+    public static final Uri MAPS_URI = Uri.parse("geo:0,0");
+    private static final Uri[] URIS = {BROWSER_URI, MAPS_URI};
+    private static final List<OnChangeListener> listeners = new ArrayList<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static BroadcastReceiver packagesReceiver;
+    private static Context appContext;
+    /**
+     * the handlers of every uri of {@link #URIS}, null until they are resolved
+     */
+    private static Map<Uri, List<ResolvedHandler>> handlers;
+    private static int generation;
+
+    private ViewHandlers() {
+    }
+
+    /**
+     * Must be called on the main thread
+     *
+     * @return the apps which open the uri, or null if they were not resolved yet
+     */
+    @Nullable
+    public static List<ResolvedHandler> get(@NonNull Uri uri) {
+        return handlers == null ? null : handlers.get(uri);
+    }
+
+    /**
+     * Must be called on the main thread. The listener is called on the main thread, whenever the handlers are resolved
+     */
+    public static void addListener(@NonNull Context context, @NonNull OnChangeListener listener) {
+        listeners.add(listener);
+        if (packagesReceiver != null)
+            return;
+        appContext = context.getApplicationContext();
+        // registered once for the whole process, so the handlers stay valid while nobody is listening
+        packagesReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                handlers = null;
+                resolve();
+            }
+        };
+        final IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        intentFilter.addDataScheme("package");
+        appContext.registerReceiver(packagesReceiver, intentFilter);
+        resolve();
+    }
+
+    /**
+     * Must be called on the main thread
+     */
+    public static void removeListener(@NonNull OnChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void resolve() {
+        final int resolveGeneration = ++generation;
+        final Context context = appContext;
+        executor.execute(() -> {
+            final Map<Uri, List<ResolvedHandler>> resolved = new ArrayMap<>(URIS.length);
+            try {
+                final PackageManager packageManager = context.getPackageManager();
+                final int iconSize = context.getResources().getDimensionPixelSize(R.dimen.app_icon_size);
+                for (Uri uri : URIS)
+                    resolved.put(uri, resolve(packageManager, iconSize, uri));
+            } catch (Exception e) {
+                Log.e(TAG, "resolve: " + e.getMessage(), e);
+                return;
+            }
+            mainHandler.post(() -> {
+                // a newer resolve is on its way
+                if (resolveGeneration != generation)
+                    return;
+                handlers = resolved;
+                for (OnChangeListener onChangeListener : new ArrayList<>(listeners))
+                    onChangeListener.onChange();
+            });
+        });
+    }
+
+    private static List<ResolvedHandler> resolve(PackageManager packageManager, int iconSize, Uri uri) {
+        final List<ResolveInfo> activitiesWithDuplicates =
+                packageManager.queryIntentActivities(
+                        new Intent(Intent.ACTION_VIEW, uri),
+                        Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                                ? PackageManager.MATCH_ALL
+                                : PackageManager.MATCH_DEFAULT_ONLY);
+        final List<ResolvedHandler> resolvedHandlers = new ArrayList<>(activitiesWithDuplicates.size());
+        final Set<String> seenPackages = new HashSet<>();
+        for (final ResolveInfo resolveInfo : activitiesWithDuplicates) {
+            final String packageName = resolveInfo.activityInfo.applicationInfo.packageName;
+            if (!seenPackages.add(packageName))
+                continue;
+            resolvedHandlers.add(new ResolvedHandler(
+                    packageName,
+                    resolveInfo.loadLabel(packageManager),
+                    S.getBitmapFromDrawable(resolveInfo.loadIcon(packageManager), iconSize),
+                    packageManager.getLaunchIntentForPackage(packageName)));
+        }
+        return Collections.unmodifiableList(resolvedHandlers);
+    }
+
+    public static class ResolvedHandler {
+        public final String packageName;
+        public final CharSequence label;
+        public final Bitmap icon;
+        /**
+         * null if the app cannot be launched
+         */
+        @Nullable
+        public final Intent launchIntent;
+
+        ResolvedHandler(String packageName, CharSequence label, Bitmap icon, @Nullable Intent launchIntent) {
+            this.packageName = packageName;
+            this.label = label;
+            this.icon = icon;
+            this.launchIntent = launchIntent;
+        }
+    }
+
+    public interface OnChangeListener {
+        void onChange();
+    }
+}
@@ -34,9 +34,9 @@ import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.provider.MediaStore;
-import android.provider.Telephony;
 import android.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -45,6 +45,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.bald.uriah.baldphone.R;
@@ -58,7 +59,7 @@ import com.bald.uriah.baldphone.activities.contacts.ContactsActivity;
 import com.bald.uriah.baldphone.databases.apps.App;
 import com.bald.uriah.baldphone.databases.apps.AppsDatabase;
 import com.bald.uriah.baldphone.databases.apps.AppsDatabaseHelper;
-import com.bald.uriah.baldphone.databases.calls.CallLogsHelper;
+import com.bald.uriah.baldphone.databases.calls.MissedCallsState;
 import com.bald.uriah.baldphone.services.DeviceLockService;
 import com.bald.uriah.baldphone.services.NotificationListenerService;
 import com.bald.uriah.baldphone.utils.BDB;
@@ -69,9 +70,10 @@ import com.bald.uriah.baldphone.utils.D;
 import com.bald.uriah.baldphone.utils.S;
 import com.bald.uriah.baldphone.views.FirstPageAppIcon;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -80,7 +82,19 @@ public class HomePage1 extends HomeView {
     private static final ComponentName WHATSAPP_COMPONENT_NAME =
             new ComponentName(WHATSAPP_PACKAGE_NAME, D.WHATSAPP_LAUNCH_ACTIVITY);
 
-    private Map<App, FirstPageAppIcon> viewsToApps;
+    /**
+     * the buttons which open a custom app instead of their default action
+     */
+    private Map<FirstPageAppIcon, App> customApps;
+    private Map<String, FirstPageAppIcon> customizableButtons;
+    /**
+     * the buttons whose badge shows whether a package has notifications, by the package
+     */
+    private Map<String, List<FirstPageAppIcon>> badgeRoutes;
+    /**
+     * null until the first state was received from {@link NotificationListenerService}
+     */
+    private Set<String> packagesWithNotifications;
     private FirstPageAppIcon bt_assistant,
             bt_camera,
             bt_contacts,
@@ -99,15 +113,20 @@ public class HomePage1 extends HomeView {
         sharedPreferences = BPrefs.get(activity);
     }
 
+    public HomePage1(@NonNull HomeScreenActivity homeScreen, @Nullable View preInflated) {
+        super(homeScreen, homeScreen, preInflated);
+        sharedPreferences = BPrefs.get(activity);
+    }
+
     @SuppressWarnings("unused")
     public HomePage1(@NonNull Context context, AttributeSet attributeSet) {
         this(context);
     }
 
     /**
-     * Listens to broadcasts from {@link NotificationListenerService} This listener only checks if
-     * there are new messages\whatsapps, and updates {@link HomePage1#bt_messages} and {@link
-     * HomePage1#bt_whatsapp} according to it The notification icon is being updated via {@link
+     * Listens to broadcasts from {@link NotificationListenerService} This listener only checks which
+     * packages have notifications, and updates the badges of the buttons routed to them by {@link
+     * #badgeRoutes}. The notification icon is being updated via {@link
      * HomeScreenActivity#notificationReceiver}
      */
     public final BroadcastReceiver notificationReceiver =
@@ -117,74 +136,58 @@ public class HomePage1 extends HomeView {
                     if (intent == null) {
                         return;
                     }
-
-                    ArrayList<String> packagesList = intent.getStringArrayListExtra("packages");
-                    final Set<String> packagesSet =
-                            packagesList != null
-                                    ? new HashSet<>(packagesList)
-                                    : Collections.emptySet();
-
-                    if (bt_whatsapp != null && !viewsToApps.containsValue(bt_whatsapp)) {
-                        bt_whatsapp.setBadgeVisibility(packagesSet.contains(WHATSAPP_PACKAGE_NAME));
+                    final ArrayList<String> packages =
+                            intent.getStringArrayListExtra(NotificationListenerService.KEY_EXTRA_PACKAGES);
+                    if (packages != null) {
+                        // the full state, sent when the home screen registers
+                        packagesWithNotifications = new HashSet<>(packages);
+                        rebuildBadgeRoutes();
+                        applyAllBadges();
+                        return;
                     }
-
-                    if (bt_recent != null && !viewsToApps.containsValue(bt_recent)) {
-                        Context viewContext = getContext(); // Use the view's context if available
-                        if (viewContext != null && viewContext.getContentResolver() != null) {
-                            bt_recent.setBadgeVisibility(
-                                    !CallLogsHelper.isAllReadSafe(
-                                            viewContext.getContentResolver()));
-                        } else if (context.getContentResolver()
-                                != null) { // Fallback to receiver's context
-                            bt_recent.setBadgeVisibility(
-                                    !CallLogsHelper.isAllReadSafe(context.getContentResolver()));
-                        } else {
-                            bt_recent.setBadgeVisibility(
-                                    false); // Fallback: hide badge if context is unavailable
-                        }
+                    if (packagesWithNotifications == null) {
+                        return;
                     }
-
-                    if (bt_messages != null && !viewsToApps.containsValue(bt_messages)) {
-                        String defaultSmsPackage = Telephony.Sms.getDefaultSmsPackage(context);
-                        if (defaultSmsPackage != null) {
-                            bt_messages.setBadgeVisibility(packagesSet.contains(defaultSmsPackage));
-                        } else {
-                            bt_messages.setBadgeVisibility(false); // No default SMS app, hide badge
+                    final ArrayList<String> added =
+                            intent.getStringArrayListExtra(NotificationListenerService.KEY_EXTRA_PACKAGES_ADDED);
+                    final ArrayList<String> removed =
+                            intent.getStringArrayListExtra(NotificationListenerService.KEY_EXTRA_PACKAGES_REMOVED);
+                    if (added != null) {
+                        for (String packageName : added) {
+                            packagesWithNotifications.add(packageName);
+                            applyBadges(packageName, true);
                         }
                     }
-
-                    for (Map.Entry<App, FirstPageAppIcon> app : viewsToApps.entrySet()) {
-                        if (app == null) continue;
-
-                        FirstPageAppIcon icon = app.getValue();
-                        if (icon != null) {
-                            String flatComponentName = app.getKey().getFlattenComponentName();
-                            if (flatComponentName != null) {
-                                ComponentName cn =
-                                        ComponentName.unflattenFromString(flatComponentName);
-                                if (cn != null) {
-                                    icon.setBadgeVisibility(
-                                            packagesSet.contains(cn.getPackageName()));
-                                } else {
-                                    icon.setBadgeVisibility(
-                                            false); // Invalid component or no package name
-                                }
-                            } else {
-                                icon.setBadgeVisibility(false); // No component name in app data
-                            }
+                    if (removed != null) {
+                        for (String packageName : removed) {
+                            packagesWithNotifications.remove(packageName);
+                            applyBadges(packageName, false);
                         }
                     }
                 }
             };
 
+    /**
+     * The missed calls badge is updated when the call log changes, not only with notifications
+     */
+    private final MissedCallsState.OnChangeListener missedCallsListener =
+            allRead -> {
+                if (bt_recent != null && !customApps.containsKey(bt_recent)) {
+                    bt_recent.setBadgeVisibility(!allRead);
+                }
+            };
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container) {
-        View view = inflater.inflate(R.layout.fragment_home_page1, container, false);
-        viewsToApps = new ArrayMap<>();
+        View view = inflate(inflater, R.layout.fragment_home_page1, container);
+        customApps = new ArrayMap<>();
+        badgeRoutes = new ArrayMap<>();
+        customizableButtons = new ArrayMap<>();
 
         initViews(view);
 
         setupOnClickListeners();
+        resolveCustomApps();
         return view;
     }
 
@@ -203,6 +206,7 @@ public class HomePage1 extends HomeView {
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
+        MissedCallsState.addListener(activity, missedCallsListener);
         LocalBroadcastManager.getInstance(activity)
                 .registerReceiver(
                         notificationReceiver,
@@ -217,6 +221,7 @@ public class HomePage1 extends HomeView {
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        MissedCallsState.removeListener(missedCallsListener);
         LocalBroadcastManager.getInstance(activity).unregisterReceiver(notificationReceiver);
     }
 
@@ -304,7 +309,7 @@ public class HomePage1 extends HomeView {
                                         .queryIntentActivities(
                                                 new Intent("android.intent.action.MAIN", null)
                                                         .setPackage(
-                                                                Telephony.Sms.getDefaultSmsPackage(
+                                                                S.getDefaultSmsPackage(
                                                                         homeScreen)),
                                                 0)
                                         .iterator()
@@ -366,32 +371,14 @@ public class HomePage1 extends HomeView {
                 });
     }
 
+    /**
+     * Binds the button to its default action, the custom app it may have instead is bound by {@link #bindCustomApps}
+     */
     private void setupButton(
             String bPrefsKey, FirstPageAppIcon bt, View.OnClickListener onClickListener) {
-        final App app;
-        if (sharedPreferences.contains(bPrefsKey)) {
-            app =
-                    AppsDatabase.getInstance(homeScreen)
-                            .appsDatabaseDao()
-                            .findByFlattenComponentName(
-                                    sharedPreferences.getString(bPrefsKey, null));
-            if (app == null) sharedPreferences.edit().remove(bPrefsKey).apply();
-        } else app = null;
-
+        customizableButtons.put(bPrefsKey, bt);
         if (homeScreen != null) {
-            if (app == null) {
-                bt.setOnClickListener(onClickListener);
-            } else {
-                bt.setText(app.getLabel());
-                AppsDatabaseHelper.loadPic(app, bt.imageView);
-                bt.setOnClickListener(
-                        v ->
-                                S.startComponentName(
-                                        homeScreen,
-                                        ComponentName.unflattenFromString(
-                                                app.getFlattenComponentName())));
-                viewsToApps.put(app, bt);
-            }
+            bt.setOnClickListener(onClickListener);
         } else { // This is for Page1EditorActivity context
             final Page1EditorActivity page1EditorActivity = (Page1EditorActivity) activity;
             final CharSequence initialAppName;
@@ -431,12 +418,137 @@ public class HomePage1 extends HomeView {
                                                     page1EditorActivity.recreate();
                                                 }
                                             }));
+        }
+    }
 
-            if (app != null) {
-                bt.setText(app.getLabel());
-                AppsDatabaseHelper.loadPic(app, bt.imageView);
-                viewsToApps.put(app, bt);
+    /**
+     * Resolves the custom apps of all the buttons with a single query, off the main thread
+     */
+    private void resolveCustomApps() {
+        final Map<String, String> customComponentNames = new ArrayMap<>();
+        for (String bPrefsKey : customizableButtons.keySet()) {
+            final String flattenComponentName = sharedPreferences.getString(bPrefsKey, null);
+            if (flattenComponentName != null)
+                customComponentNames.put(bPrefsKey, flattenComponentName);
+        }
+        if (!customComponentNames.isEmpty())
+            new ResolveCustomApps(this, customComponentNames)
+                    .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, activity.getApplicationContext());
+    }
+
+    /**
+     * @param resolvedApps the custom app of each {@link BPrefs} key, or null if it is not installed anymore
+     */
+    private void bindCustomApps(Map<String, App> resolvedApps) {
+        // a button whose custom app was removed is not custom anymore
+        customApps.clear();
+        final SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (Map.Entry<String, App> entry : resolvedApps.entrySet()) {
+            final App app = entry.getValue();
+            if (app == null) {
+                editor.remove(entry.getKey());
+                continue;
             }
+            final FirstPageAppIcon bt = customizableButtons.get(entry.getKey());
+            bt.setText(app.getLabel());
+            AppsDatabaseHelper.loadPic(app, bt.imageView);
+            if (homeScreen != null)
+                bt.setOnClickListener(
+                        v ->
+                                S.startComponentName(
+                                        homeScreen,
+                                        ComponentName.unflattenFromString(
+                                                app.getFlattenComponentName())));
+            customApps.put(bt, app);
+        }
+        editor.apply();
+        // the notifications may have arrived before the apps were bound
+        if (packagesWithNotifications != null) {
+            rebuildBadgeRoutes();
+            applyAllBadges();
+        }
+    }
+
+    /**
+     * Routes whatsapp and the default sms app to their buttons, and every custom app to its button
+     */
+    private void rebuildBadgeRoutes() {
+        badgeRoutes.clear();
+        if (bt_whatsapp != null && !customApps.containsKey(bt_whatsapp))
+            addBadgeRoute(WHATSAPP_PACKAGE_NAME, bt_whatsapp);
+        if (bt_messages != null && !customApps.containsKey(bt_messages)) {
+            final String defaultSmsPackage = S.getDefaultSmsPackage(activity);
+            if (defaultSmsPackage != null)
+                addBadgeRoute(defaultSmsPackage, bt_messages);
+            else
+                bt_messages.setBadgeVisibility(false); // No default SMS app, hide badge
+        }
+        for (Map.Entry<FirstPageAppIcon, App> entry : customApps.entrySet()) {
+            final ComponentName componentName =
+                    ComponentName.unflattenFromString(entry.getValue().getFlattenComponentName());
+            if (componentName != null)
+                addBadgeRoute(componentName.getPackageName(), entry.getKey());
+            else
+                entry.getKey().setBadgeVisibility(false); // Invalid component
+        }
+    }
+
+    private void addBadgeRoute(String packageName, FirstPageAppIcon bt) {
+        List<FirstPageAppIcon> buttons = badgeRoutes.get(packageName);
+        if (buttons == null) {
+            buttons = new ArrayList<>(1);
+            badgeRoutes.put(packageName, buttons);
+        }
+        buttons.add(bt);
+    }
+
+    private void applyAllBadges() {
+        for (Map.Entry<String, List<FirstPageAppIcon>> entry : badgeRoutes.entrySet()) {
+            final boolean visible = packagesWithNotifications.contains(entry.getKey());
+            for (FirstPageAppIcon bt : entry.getValue())
+                bt.setBadgeVisibility(visible);
+        }
+        if (bt_recent != null && !customApps.containsKey(bt_recent)) {
+            bt_recent.setBadgeVisibility(!MissedCallsState.isAllRead());
+        }
+    }
+
+    private void applyBadges(String packageName, boolean visible) {
+        final List<FirstPageAppIcon> buttons = badgeRoutes.get(packageName);
+        if (buttons == null)
+            return;
+        for (FirstPageAppIcon bt : buttons)
+            bt.setBadgeVisibility(visible);
+    }
+
+    private static class ResolveCustomApps extends AsyncTask<Context, Void, Map<String, App>> {
+        private final WeakReference<HomePage1> homePage1WeakReference;
+        private final Map<String, String> customComponentNames;
+
+        ResolveCustomApps(HomePage1 homePage1, Map<String, String> customComponentNames) {
+            super();
+            homePage1WeakReference = new WeakReference<>(homePage1);
+            this.customComponentNames = customComponentNames;
+        }
+
+        @Override
+        protected Map<String, App> doInBackground(Context... contexts) {
+            final Map<String, App> appsByComponentName = new ArrayMap<>();
+            for (App app : AppsDatabase.getInstance(contexts[0])
+                    .appsDatabaseDao()
+                    .findByFlattenComponentNames(customComponentNames.values()))
+                appsByComponentName.put(app.getFlattenComponentName(), app);
+            final Map<String, App> resolvedApps = new ArrayMap<>();
+            for (Map.Entry<String, String> entry : customComponentNames.entrySet())
+                resolvedApps.put(entry.getKey(), appsByComponentName.get(entry.getValue()));
+            return resolvedApps;
+        }
+
+        @Override
+        protected void onPostExecute(Map<String, App> resolvedApps) {
+            final HomePage1 homePage1 = homePage1WeakReference.get();
+            if (homePage1 != null)
+                homePage1.bindCustomApps(resolvedApps);
         }
     }
 }
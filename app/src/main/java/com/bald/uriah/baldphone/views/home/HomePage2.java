@@ -16,13 +16,10 @@
 
 package com.bald.uriah.baldphone.views.home;
 
-import static android.os.Build.VERSION_CODES;
-
+import android.content.ActivityNotFoundException;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.Build.VERSION;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -31,6 +28,7 @@ import android.widget.PopupWindow;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.activities.AppsActivity;
@@ -43,12 +41,9 @@ import com.bald.uriah.baldphone.activities.pills.PillsActivity;
 import com.bald.uriah.baldphone.utils.BaldToast;
 import com.bald.uriah.baldphone.utils.DropDownRecyclerViewAdapter;
 import com.bald.uriah.baldphone.utils.S;
-import com.bumptech.glide.Glide;
+import com.bald.uriah.baldphone.utils.ViewHandlers;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class HomePage2 extends HomeView {
     public static final String TAG = HomePage2.class.getSimpleName();
@@ -57,16 +52,20 @@ public class HomePage2 extends HomeView {
     private TextView tv_internet, tv_maps;
     private View bt_settings, bt_internet, bt_maps, bt_photo;
     private View bt_videos, bt_pills, bt_apps, bt_alarms; // Added fields
-    private PackageManager packageManager;
-
-    public HomePage2(@NonNull HomeScreenActivity homeScreen) {
-        super(homeScreen, homeScreen);
+    /**
+     * what the internet and maps buttons show when there is not exactly one app to open
+     */
+    private Drawable internetIcon, mapsIcon;
+    private CharSequence internetLabel, mapsLabel;
+    private final ViewHandlers.OnChangeListener viewHandlersListener = this::bindViewHandlers;
+
+    public HomePage2(@NonNull HomeScreenActivity homeScreen, @Nullable View preInflated) {
+        super(homeScreen, homeScreen, preInflated);
     }
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container) {
-        view = inflater.inflate(R.layout.fragment_home_page2, container, false);
-        packageManager = homeScreen.getPackageManager();
+        view = inflate(inflater, R.layout.fragment_home_page2, container);
         attachXml();
         genOnLongClickListeners();
         return view;
@@ -87,15 +86,30 @@ public class HomePage2 extends HomeView {
 
         tv_internet = view.findViewById(R.id.tv_internet);
         tv_maps = view.findViewById(R.id.tv_maps);
+
+        internetIcon = iv_internet.getDrawable();
+        mapsIcon = iv_maps.getDrawable();
+        internetLabel = tv_internet.getText();
+        mapsLabel = tv_maps.getText();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        ViewHandlers.addListener(homeScreen, viewHandlersListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        ViewHandlers.removeListener(viewHandlersListener);
     }
 
     private void genOnLongClickListeners() {
         bt_settings.setOnClickListener(
                 v -> homeScreen.startActivity(new Intent(getContext(), SettingsActivity.class)));
 
-        clickListenerForAbstractOpener(
-                Uri.parse("http://www.google.com"), bt_internet, iv_internet, tv_internet);
-        clickListenerForAbstractOpener(Uri.parse("geo:0,0"), bt_maps, iv_maps, tv_maps);
+        bindViewHandlers();
 
         if (bt_photo != null) {
             bt_photo.setOnClickListener(
@@ -129,30 +143,43 @@ public class HomePage2 extends HomeView {
         }
     }
 
-    private void clickListenerForAbstractOpener(
+    /**
+     * Binds the internet and maps buttons to the apps which open them, once {@link ViewHandlers} resolved those
+     */
+    private void bindViewHandlers() {
+        bindViewHandler(ViewHandlers.BROWSER_URI, bt_internet, iv_internet, tv_internet, internetIcon, internetLabel);
+        bindViewHandler(ViewHandlers.MAPS_URI, bt_maps, iv_maps, tv_maps, mapsIcon, mapsLabel);
+    }
+
+    private void bindViewHandler(
             @NonNull final Uri uri,
             @NonNull final View bt,
             @NonNull final ImageView iv,
-            @NonNull final TextView tv) {
-        final Intent intent = new Intent(Intent.ACTION_VIEW, uri);
-        final List<ResolveInfo> activitiesWithDuplicates =
-                packageManager.queryIntentActivities(
-                        intent,
-                        VERSION.SDK_INT >= VERSION_CODES.M
-                                ? PackageManager.MATCH_ALL
-                                : PackageManager.MATCH_DEFAULT_ONLY);
-
-        // Remove duplicates
-        final List<ResolveInfo> resolveInfos = new ArrayList<>();
-        final Set<String> seenPackages = new HashSet<>();
-        for (final ResolveInfo resolveInfo : activitiesWithDuplicates) {
-            final String packageName = resolveInfo.activityInfo.applicationInfo.packageName;
-            if (seenPackages.add(packageName)) { // Set.add() returns true if the element was new
-                resolveInfos.add(resolveInfo);
-            }
+            @NonNull final TextView tv,
+            final Drawable defaultIcon,
+            final CharSequence defaultLabel) {
+        final List<ViewHandlers.ResolvedHandler> resolvedHandlers = ViewHandlers.get(uri);
+        if (resolvedHandlers == null) {
+            // not resolved yet, let the system choose
+            bt.setOnClickListener(v -> {
+                try {
+                    homeScreen.startActivity(new Intent(Intent.ACTION_VIEW, uri));
+                } catch (ActivityNotFoundException e) {
+                    showErrorMessage(v);
+                }
+            });
+            return;
         }
-
-        if (resolveInfos.size() > 1) {
+        if (resolvedHandlers.size() == 1) {
+            final ViewHandlers.ResolvedHandler resolvedHandler = resolvedHandlers.get(0);
+            iv.setImageBitmap(resolvedHandler.icon);
+            tv.setText(resolvedHandler.label);
+            bt.setOnClickListener(v1 -> startResolvedHandler(resolvedHandler));
+            return;
+        }
+        iv.setImageDrawable(defaultIcon);
+        tv.setText(defaultLabel);
+        if (resolvedHandlers.size() > 1) {
             bt.setOnClickListener(v -> S.showDropDownPopup(
                     homeScreen,
                     getWidth(),
@@ -162,27 +189,16 @@ public class HomePage2 extends HomeView {
                                 DropDownRecyclerViewAdapter.ViewHolder viewHolder,
                                 int position,
                                 PopupWindow popupWindow) {
-                            final ResolveInfo resolveInfo = resolveInfos.get(position);
-                            setupAppDropdownItem(viewHolder, resolveInfo, popupWindow);
+                            setupAppDropdownItem(viewHolder, resolvedHandlers.get(position), popupWindow);
                         }
 
                         @Override
                         public int size() {
-                            return resolveInfos.size();
+                            return resolvedHandlers.size();
                         }
 
                     },
                     bt));
-        } else if (resolveInfos.size() == 1) {
-            final ResolveInfo resolveInfo = resolveInfos.get(0);
-            if (S.isValidContextForGlide(iv.getContext())) {
-                Glide.with(iv).load(resolveInfo.loadIcon(packageManager)).into(iv);
-            }
-            tv.setText(resolveInfo.loadLabel(packageManager));
-            bt.setOnClickListener(v1 ->
-                    homeScreen.startActivity(
-                            packageManager.getLaunchIntentForPackage(
-                                    resolveInfo.activityInfo.applicationInfo.packageName)));
         } else {
             bt.setOnClickListener(this::showErrorMessage);
         }
@@ -190,27 +206,24 @@ public class HomePage2 extends HomeView {
 
     private void setupAppDropdownItem(
             DropDownRecyclerViewAdapter.ViewHolder viewHolder,
-            final ResolveInfo resolveInfo,
+            final ViewHandlers.ResolvedHandler resolvedHandler,
             final PopupWindow popupWindow) {
-        if (S.isValidContextForGlide(viewHolder.pic.getContext())) {
-            Glide.with(viewHolder.pic)
-                    .load(resolveInfo.loadIcon(packageManager))
-                    .into(viewHolder.pic);
-        }
-        viewHolder.text.setText(resolveInfo.loadLabel(packageManager));
+        viewHolder.pic.setImageBitmap(resolvedHandler.icon);
+        viewHolder.text.setText(resolvedHandler.label);
         viewHolder.itemView.setOnClickListener(
                 v1 -> {
-                    homeScreen.startActivity(
-                            packageManager
-                                    .getLaunchIntentForPackage(
-                                            resolveInfo
-                                                    .activityInfo
-                                                    .applicationInfo
-                                                    .packageName));
+                    startResolvedHandler(resolvedHandler);
                     popupWindow.dismiss();
                 });
     }
 
+    private void startResolvedHandler(ViewHandlers.ResolvedHandler resolvedHandler) {
+        if (resolvedHandler.launchIntent != null)
+            homeScreen.startActivity(resolvedHandler.launchIntent);
+        else
+            showErrorMessage(this);
+    }
+
     private void showErrorMessage(View v) {
         BaldToast.from(v.getContext())
                 .setType(BaldToast.TYPE_ERROR)
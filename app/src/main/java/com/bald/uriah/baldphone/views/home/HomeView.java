@@ -23,19 +23,40 @@ import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 
+import androidx.annotation.LayoutRes;
+import androidx.annotation.Nullable;
+
 import com.bald.uriah.baldphone.activities.HomeScreenActivity;
 
 public abstract class HomeView extends FrameLayout {
     protected final HomeScreenActivity homeScreen;
     protected final Activity activity;
+    private View preInflated;
 
     public HomeView(HomeScreenActivity homeScreen, Activity activity) {
+        this(homeScreen, activity, null);
+    }
+
+    /**
+     * @param preInflated the layout of the view if it was inflated already, see {@link PreInflatedViews}
+     */
+    public HomeView(HomeScreenActivity homeScreen, Activity activity, @Nullable View preInflated) {
         super(homeScreen == null ? activity : homeScreen);
         this.homeScreen = homeScreen;
         this.activity = activity;
+        this.preInflated = preInflated;
         addView(onCreateView(LayoutInflater.from(activity), this), new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
     }
 
     public abstract View onCreateView(LayoutInflater layoutInflater, ViewGroup viewGroup);
 
+    /**
+     * @return the pre inflated layout if there is one, otherwise the layout inflated now
+     */
+    protected View inflate(LayoutInflater layoutInflater, @LayoutRes int layout, ViewGroup viewGroup) {
+        final View view = preInflated;
+        preInflated = null;
+        return view != null ? view : layoutInflater.inflate(layout, viewGroup, false);
+    }
+
 }
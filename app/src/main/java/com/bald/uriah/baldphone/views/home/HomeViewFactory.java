@@ -19,6 +19,7 @@ package com.bald.uriah.baldphone.views.home;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -27,35 +28,39 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 import com.bald.uriah.baldphone.R;
 import com.bald.uriah.baldphone.activities.HomeScreenActivity;
 import com.bald.uriah.baldphone.adapters.BaldPagerAdapter;
+import com.bald.uriah.baldphone.databases.home_screen_pins.HomeScreenPinHelper;
 import com.bald.uriah.baldphone.views.BaldLinearLayoutButton;
 import com.bald.uriah.baldphone.views.HomeScreenAppView;
 
+import java.util.List;
+
 public class HomeViewFactory extends HomeView {
     public static final String TAG = HomeViewFactory.class.getSimpleName();
     public static final int AMOUNT_PER_PAGE = 8;
     public ConstraintLayout child;
+    private TextView title;
+    private int index;
 
-    public HomeViewFactory(@NonNull HomeScreenActivity homeScreen) {
-        super(homeScreen, homeScreen);
+    public HomeViewFactory(@NonNull HomeScreenActivity homeScreen, @Nullable View preInflated) {
+        super(homeScreen, homeScreen, preInflated);
     }
 
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container) {
-        final ConstraintLayout view = (ConstraintLayout) inflater.inflate(R.layout.home_factory, container, false);
+        final ConstraintLayout view = (ConstraintLayout) inflate(inflater, R.layout.home_factory, container);
         this.child = view;
+        this.title = view.findViewById(R.id.title);
         return view;
     }
 
     public void populate(int index) {
+        this.index = index;
         @NonNull final BaldPagerAdapter baldPagerAdapter = homeScreen.baldPagerAdapter;
+        title.setVisibility(baldPagerAdapter.isMostUsedPage(index) ? VISIBLE : GONE);
 
-        final int startIndex = AMOUNT_PER_PAGE * (index);
-        int endIndex = ((AMOUNT_PER_PAGE * (index)) + AMOUNT_PER_PAGE);
-        if (endIndex > baldPagerAdapter.pinnedList.size())
-            endIndex = baldPagerAdapter.pinnedList.size();
-
-        for (int i = 0; i < endIndex - startIndex; i++) {
+        final List<? extends HomeScreenPinHelper.HomeScreenPinnable> items = baldPagerAdapter.getPageItems(index);
+        for (int i = 0; i < items.size(); i++) {
             final HomeScreenAppView homeScreenAppView = new HomeScreenAppView(
                     (BaldLinearLayoutButton) child.getChildAt(
                             i / 2
@@ -63,12 +68,19 @@ public class HomeViewFactory extends HomeView {
                                     (((i % 2)) * AMOUNT_PER_PAGE / 2))
             );
             homeScreenAppView.setVisibility(VISIBLE);
-            baldPagerAdapter.pinnedList.get(i + startIndex).applyToHomeScreenAppView(homeScreenAppView);
+            items.get(i).applyToHomeScreenAppView(homeScreenAppView);
         }
     }
 
+    /**
+     * @return the index of the page this factory was last populated with
+     */
+    public int getIndex() {
+        return index;
+    }
+
     public void recycle() {
-        for (int i = 0; i < child.getChildCount(); i++) {
+        for (int i = 0; i < AMOUNT_PER_PAGE; i++) {
             final View view = child.getChildAt(i);
             view.setVisibility(View.INVISIBLE);
             view.setOnClickListener(null);
@@ -42,15 +42,15 @@ public class NotesView extends HomeView {
     private EditText editText;
     private SharedPreferences sharedPreferences;
 
-    public NotesView(@NonNull HomeScreenActivity activity) {
-        super(activity, activity);
+    public NotesView(@NonNull HomeScreenActivity activity, @Nullable View preInflated) {
+        super(activity, activity, preInflated);
     }
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container) {
         homeScreen.recognizerManager.setNotesFragment(this);
         sharedPreferences = BPrefs.get(getContext());
-        final View view = inflater.inflate(R.layout.notes_fragment, container, false);
+        final View view = inflate(inflater, R.layout.notes_fragment, container);
         editText = view.findViewById(R.id.edit_text);
         editText.setText(sharedPreferences.getString(BPrefs.NOTE_KEY, ""));
 
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.views.home;
+
+import android.app.Activity;
+import android.util.SparseArray;
+import android.view.View;
+
+import androidx.annotation.LayoutRes;
+import androidx.annotation.Nullable;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+
+/**
+ * Inflates the layouts of the home pages with an {@link AsyncLayoutInflater}, while the home screen initializes the rest,
+ * so {@link com.bald.uriah.baldphone.adapters.BaldPagerAdapter} does not inflate them on the main thread.
+ * A layout which is not ready when it is needed, or cannot be inflated off the main thread, is inflated by the page itself, as before.
+ * Must be used from the main thread.
+ */
+public class PreInflatedViews {
+    private final AsyncLayoutInflater asyncLayoutInflater;
+    /**
+     * the inflated layouts which were not taken yet
+     */
+    private final SparseArray<View> inflated = new SparseArray<>();
+    /**
+     * the layouts which were requested and not taken yet, inflated or not
+     */
+    private final SparseArray<Boolean> requested = new SparseArray<>();
+
+    public PreInflatedViews(Activity activity) {
+        asyncLayoutInflater = new AsyncLayoutInflater(activity);
+    }
+
+    public void inflate(@LayoutRes int... layouts) {
+        for (final int layout : layouts) {
+            if (requested.get(layout) != null)
+                continue;
+            requested.put(layout, true);
+            asyncLayoutInflater.inflate(layout, null, (view, resid, parent) -> {
+                // dropped if it was taken or cleared meanwhile
+                if (requested.get(resid) != null)
+                    inflated.put(resid, view);
+            });
+        }
+    }
+
+    /**
+     * Each layout is given only once, it is not waited for.
+     *
+     * @return the inflated layout, or null if it was not requested or is not inflated yet
+     */
+    @Nullable
+    public View take(@LayoutRes int layout) {
+        final View view = inflated.get(layout);
+        inflated.remove(layout);
+        requested.remove(layout);
+        return view;
+    }
+
+    /**
+     * Drops the layouts which were not taken
+     */
+    public void clear() {
+        inflated.clear();
+        requested.clear();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.databases.apps;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AppsDiffTest {
+    @Test
+    public void computesAddedAndRemoved() {
+        final List<String> installed = Arrays.asList("a/.A", "b/.B", "c/.C");
+        final List<AppsDiff.IndexedComponent> indexed = Arrays.asList(
+                new AppsDiff.IndexedComponent(1, "a/.A"),
+                new AppsDiff.IndexedComponent(2, "old/.Old"),
+                new AppsDiff.IndexedComponent(3, "c/.C"));
+
+        final AppsDiff appsDiff = AppsDiff.compute(installed, indexed);
+
+        assertEquals(Collections.singletonList("b/.B"), appsDiff.added);
+        assertArrayEquals(new int[]{2}, appsDiff.removedIds);
+    }
+
+    @Test
+    public void emptyWhenInSync() {
+        final AppsDiff appsDiff = AppsDiff.compute(
+                Collections.singletonList("a/.A"),
+                Collections.singletonList(new AppsDiff.IndexedComponent(1, "a/.A")));
+        assertTrue(appsDiff.isEmpty());
+    }
+
+    @Test
+    public void computesChangedByLastUpdateTime() {
+        final List<String> installed = Arrays.asList("a/.A", "a/.A2", "b/.B", "c/.C");
+        final List<AppsDiff.IndexedComponent> indexed = Arrays.asList(
+                new AppsDiff.IndexedComponent(1, "a/.A", 10),
+                new AppsDiff.IndexedComponent(2, "a/.A2", 10),
+                new AppsDiff.IndexedComponent(3, "b/.B", 20),
+                new AppsDiff.IndexedComponent(4, "c/.C", 30));
+        final Map<String, Long> lastUpdateTimes = new HashMap<>();
+        lastUpdateTimes.put("a", 11L);
+        lastUpdateTimes.put("b", 20L);
+
+        final AppsDiff appsDiff = AppsDiff.compute(installed, indexed, lastUpdateTimes);
+
+        assertEquals(Arrays.asList("a/.A", "a/.A2"), appsDiff.changed);
+        assertTrue(appsDiff.added.isEmpty());
+        assertEquals(0, appsDiff.removedIds.length);
+        assertEquals(11L, appsDiff.getLastUpdateTime("a/.A"));
+        assertEquals(0L, appsDiff.getLastUpdateTime("c/.C"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.services;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RankedNotificationsTest {
+    private static final RankedNotifications.Ranks NO_RANKS = key -> -1;
+
+    @Test
+    public void unrankedAreNewestFirst() {
+        final RankedNotifications<String> notifications = new RankedNotifications<>();
+        assertTrue(notifications.put("A", "a1", 1, NO_RANKS));
+        assertTrue(notifications.put("B", "b1", 2, NO_RANKS));
+        assertEquals(Arrays.asList("B", "A"), notifications.keys());
+
+        // an update moves the notification by its new post time
+        assertFalse(notifications.put("A", "a2", 3, NO_RANKS));
+        assertEquals(Arrays.asList("A", "B"), notifications.keys());
+        assertEquals(Arrays.asList("a2", "b1"), notifications.values());
+    }
+
+    @Test
+    public void followsTheRanks() {
+        final RankedNotifications<String> notifications = new RankedNotifications<>();
+        final Map<String, Integer> ranks = new HashMap<>();
+        final RankedNotifications.Ranks rankingMap = key -> ranks.containsKey(key) ? ranks.get(key) : -1;
+
+        ranks.put("A", 0);
+        notifications.put("A", "a1", 1, rankingMap);
+        ranks.put("A", 1);
+        ranks.put("B", 0);
+        notifications.put("B", "b1", 2, rankingMap);
+        assertEquals(Arrays.asList("B", "A"), notifications.keys());
+
+        // the system may rank an updated notification anywhere
+        ranks.put("A", 0);
+        ranks.put("B", 1);
+        notifications.put("A", "a2", 3, rankingMap);
+        assertEquals(Arrays.asList("A", "B"), notifications.keys());
+
+        // ranked ones come before the ones the ranking does not know yet
+        notifications.put("C", "c1", 4, rankingMap);
+        assertEquals(Arrays.asList("A", "B", "C"), notifications.keys());
+
+        ranks.put("C", 0);
+        ranks.put("A", 1);
+        ranks.put("B", 2);
+        notifications.setRanks(rankingMap);
+        assertEquals(Arrays.asList("C", "A", "B"), notifications.keys());
+    }
+
+    @Test
+    public void removes() {
+        final RankedNotifications<String> notifications = new RankedNotifications<>();
+        notifications.put("A", "a1", 1, NO_RANKS);
+        notifications.put("B", "b1", 2, NO_RANKS);
+        assertEquals("a1", notifications.remove("A"));
+        assertNull(notifications.remove("A"));
+        assertNull(notifications.get("A"));
+        assertEquals(1, notifications.size());
+        assertEquals(Arrays.asList("B"), notifications.keys());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Uriah Shaul Mandel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bald.uriah.baldphone.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingDispatcherTest {
+    private static final long WINDOW = 150, MAX_LATENCY = 500;
+    private FakeTime time;
+    private int deliveries;
+    private CoalescingDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        time = new FakeTime();
+        deliveries = 0;
+        dispatcher = new CoalescingDispatcher(time, time, WINDOW, MAX_LATENCY, () -> deliveries++);
+    }
+
+    @Test
+    public void deliversAfterTheWindow() {
+        dispatcher.dispatch();
+        time.advance(WINDOW - 1);
+        assertEquals(0, deliveries);
+        time.advance(1);
+        assertEquals(1, deliveries);
+        assertFalse(dispatcher.isPending());
+    }
+
+    @Test
+    public void mergesABurst() {
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch();
+            time.advance(10);
+        }
+        assertEquals(0, deliveries);
+        time.advance(WINDOW);
+        assertEquals(1, deliveries);
+    }
+
+    @Test
+    public void deliversWithinTheMaxLatencyWhileEventsKeepComing() {
+        for (long elapsed = 0; elapsed < MAX_LATENCY; elapsed += 50) {
+            dispatcher.dispatch();
+            time.advance(50);
+        }
+        assertEquals(1, deliveries);
+
+        // the next burst is measured from its own first event
+        dispatcher.dispatch();
+        time.advance(WINDOW);
+        assertEquals(2, deliveries);
+    }
+
+    @Test
+    public void flushDeliversNowAndOnlyOnce() {
+        dispatcher.flush();
+        assertEquals(0, deliveries);
+        dispatcher.dispatch();
+        dispatcher.flush();
+        assertEquals(1, deliveries);
+        time.advance(MAX_LATENCY);
+        assertEquals(1, deliveries);
+    }
+
+    @Test
+    public void cancelDropsThePendingEvents() {
+        dispatcher.dispatch();
+        assertTrue(dispatcher.isPending());
+        dispatcher.cancel();
+        time.advance(MAX_LATENCY);
+        assertEquals(0, deliveries);
+    }
+
+    @Test
+    public void zeroWindowDeliversOnTheNextRun() {
+        dispatcher = new CoalescingDispatcher(time, time, 0, 0, () -> deliveries++);
+        dispatcher.dispatch();
+        dispatcher.dispatch();
+        time.advance(0);
+        assertEquals(1, deliveries);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaxLatencyShorterThanTheWindow() {
+        new CoalescingDispatcher(time, time, MAX_LATENCY, WINDOW, () -> deliveries++);
+    }
+
+    /**
+     * a clock and a scheduler which run the scheduled runnables only when the time is advanced
+     */
+    private static class FakeTime implements CoalescingDispatcher.Clock, CoalescingDispatcher.Scheduler {
+        private final List<Scheduled> scheduled = new ArrayList<>();
+        private long now;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            scheduled.add(new Scheduled(runnable, now + delayMillis));
+        }
+
+        @Override
+        public void cancel(Runnable runnable) {
+            for (int i = scheduled.size() - 1; i >= 0; i--)
+                if (scheduled.get(i).runnable == runnable)
+                    scheduled.remove(i);
+        }
+
+        void advance(long millis) {
+            final long target = now + millis;
+            while (true) {
+                Scheduled next = null;
+                for (final Scheduled s : scheduled)
+                    if (s.time <= target && (next == null || s.time < next.time))
+                        next = s;
+                if (next == null)
+                    break;
+                scheduled.remove(next);
+                now = next.time;
+                next.runnable.run();
+            }
+            now = target;
+        }
+
+        private static class Scheduled {
+            final Runnable runnable;
+            final long time;
+
+            Scheduled(Runnable runnable, long time) {
+                this.runnable = runnable;
+                this.time = time;
+            }
+        }
+    }
+}